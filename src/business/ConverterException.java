@@ -5,11 +5,11 @@ package business;
  * Date: 11.02.13
  * Time: 19:35
  * <p/>
- * These type of exceptions should be thrown if somethings went wrong while accessing methods from
- * {@link Converter}.
+ * These type of exceptions should be thrown if a task list could not be converted into a
+ * task tree, e.g. because a read file is corrupt.
  */
 public class ConverterException extends Throwable {
-  ConverterException(String message) {
+  public ConverterException(String message) {
     super(message);
   }
 }
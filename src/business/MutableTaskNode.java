@@ -5,10 +5,14 @@ import i18n.I18nSupport;
 
 import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * User: Timm Herrmann
@@ -19,18 +23,110 @@ import java.util.List;
  * {@link business.Task}. Additionally to the task properties a node can represent an upper
  * task or a simple task. The {@link javax.swing.tree.TreeNode#getAllowsChildren()} method
  * returns only true for a node that has children that have children themselves. To get all
- * children the method {@link javax.swing.tree.TreeNode#children()} can be called.
+ * children the method {@link javax.swing.tree.TreeNode#children()} or {@link #getChildList()}
+ * can be called. Both do not copy the children.
+ * <p/>
+ * Every node knows its index in its parent, so {@link #getIndex(TreeNode)} does not have to
+ * search the children. Inserting or removing a child invalidates the indices of the
+ * following siblings, they are updated by the next call of {@link #getIndex(TreeNode)}.
+ * <p/>
+ * Subclasses may create their children on demand by overriding {@link #loadChildren()}.
+ * Every access to the children calls this method first.
+ * <p/>
+ * A node is marked as changed, if a child was inserted or removed or if its task was
+ * changed by {@link #markChanged()}. The mark is propagated to all ancestors, so a node that
+ * is not marked has a subtree that was not edited since it was created. Writers use that to
+ * reuse the stored form of such subtrees.
+ * <p/>
+ * Every node has a numeric id that is stored in the files, so a task keeps its id across
+ * saving and reading. New nodes get an id that is higher than all ids that were used or
+ * read before, so the ids of a tree are unique.
+ * <p/>
+ * The number of all sub nodes is counted once and then kept up to date by inserting and
+ * removing children, which updates the numbers of all ancestors. Nodes that are created
+ * while a tree is read do not know their number yet, so building a tree does not update the
+ * ancestors for every inserted node. If the number of a node is not known, the numbers of
+ * its ancestors are not known either.
+ * <p/>
+ * A node keeps the {@link TaskSnapshot} that was taken last of its subtree, until the node
+ * or one of its sub nodes changes. A new snapshot therefore creates only snapshots of the
+ * changed nodes and their ancestors, all other subtrees are shared with the last snapshot.
  */
 public class MutableTaskNode implements MutableTreeNode {
-  private boolean isUpperTask;
+  /** Id of every root node, roots are not stored */
+  public static final long ROOT_ID = 0L;
+
+  private static final AtomicLong NEXT_ID = new AtomicLong(ROOT_ID + 1);
+  private static final int UNKNOWN_COUNT = -1;
+
+  private long id;
   private Task task;
   private MutableTreeNode parent;
   private List<MutableTaskNode> children;
-  
+  private List<MutableTaskNode> childView;
+  /* index of this node in the children of its parent */
+  private int index;
+  /* number of the first children whose indices are up to date */
+  private int validIndices;
+  private boolean changed;
+  private int subNodeCount;
+  /* the last snapshot of the subtree, if it did not change since. A node without snapshot
+   * whose ancestor has one is part of an unchanged subtree that was snapshot unloaded, so
+   * marking it as changed reaches that ancestor. */
+  private TaskSnapshot snapshot;
+
+  /** Creates a node with a new id. */
   public MutableTaskNode(Task task) {
-    isUpperTask = false;
+    this(task, createID());
+  }
+
+  /**
+   * Creates a node with an id that was read from a file. New nodes get higher ids.
+   */
+  public MutableTaskNode(Task task, long id) {
     children = new ArrayList<MutableTaskNode>();
+    changed = false;
+    subNodeCount = UNKNOWN_COUNT;
     setUserObject(task);
+    setID(id);
+  }
+
+  /**
+   * Will be called before the children of this node are accessed. Subclasses that create
+   * their children on demand have to insert them here. The default implementation does
+   * nothing.
+   */
+  protected void loadChildren() {
+  }
+
+  /**
+   * Returns false, if the children of this node were not created by {@link #loadChildren()}
+   * yet. The default implementation returns always true.
+   */
+  protected boolean isLoaded() {
+    return true;
+  }
+
+  /**
+   * Will be called before the children of this node are replaced by
+   * {@link #replaceChildren(MutableTaskNode)}. Subclasses that create their children on
+   * demand must not create them afterwards. The default implementation does nothing.
+   */
+  protected void discardUnloadedChildren() {
+  }
+
+  /**
+   * Creates a node without children for the copy of the task of this node. Subclasses that
+   * create their children on demand return a node that creates the same children, if the
+   * children of this node were not loaded yet.
+   */
+  protected MutableTaskNode copyNode(Task taskCopy) {
+    return new MutableTaskNode(taskCopy, id);
+  }
+
+  private List<MutableTaskNode> getChildren() {
+    loadChildren();
+    return children;
   }
 
   private void checkIndex(int index, int compareTo) {
@@ -41,25 +137,35 @@ public class MutableTaskNode implements MutableTreeNode {
 
   public TreeNode getChildAt(int childIndex) {
     checkIndex(childIndex, getChildCount());
-    return children.get(childIndex);
+    return getChildren().get(childIndex);
   }
 
   public int getChildCount() {
-    return children.size();
+    return getChildren().size();
   }
 
   public TreeNode getParent() {
     return parent;
   }
 
+  /**
+   * Returns the index of a child. The index is known by the child, the children have to be
+   * searched only, if the node was inserted into another node after this node.
+   */
   public int getIndex(TreeNode node) {
-    if (node instanceof MutableTaskNode)
-      return children.indexOf(node);
-    else return -1;
+    if (node instanceof MutableTaskNode) {
+      final List<MutableTaskNode> children = getChildren();
+      final MutableTaskNode child = (MutableTaskNode) node;
+      if (child.index >= validIndices || children.get(child.index) != child)
+        updateIndices();
+      if (child.index < children.size() && children.get(child.index) == child)
+        return child.index;
+      return children.indexOf(child);
+    } else return -1;
   }
 
   public boolean getAllowsChildren() {
-    return isUpperTask;
+    return getChildCount() != 0;
   }
 
   public boolean isLeaf() {
@@ -67,40 +173,173 @@ public class MutableTaskNode implements MutableTreeNode {
   }
 
   /**
-   * Returns all children of this node. Children that have children themselves are first in
-   * the sequence. Children without children are last in the sequence.
+   * Returns all children of this node. The children are not copied, so the node must not be
+   * changed while the Enumeration is used.
    * @return An Enumeration with MutableTaskNode objects.
    */
   public Enumeration<MutableTaskNode> children() {
-    final List<MutableTaskNode> nodes =
-        new ArrayList<MutableTaskNode>(children.size());
-    for (MutableTaskNode child : children)
-      nodes.add(child);
-    return Collections.enumeration(nodes);
+    return Collections.enumeration(getChildList());
+  }
+
+  /**
+   * Returns a read-only view of the children of this node. The view reflects all later
+   * changes of the children, so the node must not be changed while the view is iterated.
+   */
+  public List<MutableTaskNode> getChildList() {
+    loadChildren();
+    if (childView == null)
+      childView = Collections.unmodifiableList(children);
+    return childView;
   }
 
   public void insert(MutableTreeNode child, int index) {
     if(child instanceof MutableTaskNode) {
       addChild((MutableTaskNode) child, index);
+      updateSubNodeCounts((MutableTaskNode) child, 1);
+      markChanged();
     }
   }
 
+  /**
+   * Appends a child that was loaded by {@link #loadChildren()}. In contrast to
+   * {@link #insert} the node will not be marked as changed.
+   */
+  protected void addLoadedChild(MutableTaskNode child) {
+    addChild(child, children.size());
+  }
+
+  /**
+   * Replaces all children of this node by the children of another node, which has no
+   * children afterwards. Children of this node that were not loaded yet will not be loaded,
+   * so a subtree that was never accessed can be replaced without reading it.
+   */
+  void replaceChildren(MutableTaskNode node) {
+    final List<MutableTaskNode> newChildren = node.getChildren();
+    discardUnloadedChildren();
+    for (MutableTaskNode child : children) {
+      if (child.parent == this)
+        child.parent = null;
+    }
+    children.clear();
+    validIndices = 0;
+    for (MutableTaskNode child : newChildren)
+      addChild(child, children.size());
+    newChildren.clear();
+    node.validIndices = 0;
+
+    final int count = node.subNodeCount;
+    final int difference = count - subNodeCount;
+    TreeNode ancestor = this;
+    while (ancestor instanceof MutableTaskNode
+        && ((MutableTaskNode) ancestor).subNodeCount != UNKNOWN_COUNT) {
+      final MutableTaskNode known = (MutableTaskNode) ancestor;
+      known.subNodeCount = count == UNKNOWN_COUNT
+          ? UNKNOWN_COUNT : known.subNodeCount + difference;
+      ancestor = known.parent;
+    }
+    node.subNodeCount = 0;
+    markChanged();
+  }
+
   private void addChild(MutableTaskNode child, int index) {
-    children.add(index, child);
+    getChildren().add(index, child);
     child.setParent(this);
-    if(!isUpperTask)
-      isUpperTask = true;
+    if (index == validIndices && index == children.size() - 1) {
+      child.index = index;
+      validIndices++;
+    } else validIndices = Math.min(validIndices, index);
   }
 
   public void remove(int index) {
-    children.remove(index);
-    isUpperTask = !(getChildCount() == 0);
+    final MutableTaskNode child = getChildren().remove(index);
+    validIndices = Math.min(validIndices, index);
+    removed(child);
   }
 
   public void remove(MutableTreeNode node) {
-    if(node instanceof MutableTaskNode) {
-      children.remove(node);
-      isUpperTask = !(getChildCount() == 0);
+    final int index = getIndex(node);
+    if(index >= 0)
+      remove(index);
+  }
+
+  /**
+   * Inserts children in one pass, so the following siblings are shifted once.
+   * @param children The children to insert.
+   * @param indices Ascending indices the children will have after the insertion.
+   */
+  public void insert(MutableTaskNode[] children, int[] indices) {
+    if (children.length == 0)
+      return;
+    final List<MutableTaskNode> list = getChildren();
+    int oldIndex = list.size() - 1;
+    list.addAll(Collections.<MutableTaskNode>nCopies(children.length, null));
+    int inserted = children.length - 1;
+    for (int index = list.size() - 1; inserted >= 0; index--) {
+      if (indices[inserted] == index) {
+        list.set(index, children[inserted]);
+        children[inserted].setParent(this);
+        updateSubNodeCounts(children[inserted], 1);
+        inserted--;
+      } else list.set(index, list.get(oldIndex--));
+    }
+    validIndices = Math.min(validIndices, indices[0]);
+    markChanged();
+  }
+
+  /**
+   * Removes children in one pass, so the following siblings are shifted once.
+   * @param indices Ascending indices of the children to remove.
+   */
+  public void remove(int[] indices) {
+    if (indices.length == 0)
+      return;
+    final List<MutableTaskNode> list = getChildren();
+    int target = indices[0];
+    int removed = 0;
+    for (int index = indices[0]; index < list.size(); index++) {
+      if (removed < indices.length && indices[removed] == index) {
+        final MutableTaskNode child = list.get(index);
+        updateSubNodeCounts(child, -1);
+        if (child.parent == this)
+          child.parent = null;
+        removed++;
+      } else list.set(target++, list.get(index));
+    }
+    list.subList(target, list.size()).clear();
+    validIndices = Math.min(validIndices, indices[0]);
+    markChanged();
+  }
+
+  /** Updates the indices of the children that were invalidated by inserting or removing. */
+  private void updateIndices() {
+    for (int index = validIndices; index < children.size(); index++)
+      children.get(index).index = index;
+    validIndices = children.size();
+  }
+
+  private void removed(MutableTaskNode child) {
+    updateSubNodeCounts(child, -1);
+    if (child.parent == this)
+      child.parent = null;
+    markChanged();
+  }
+
+  /**
+   * Adds the subtree of an inserted child to the numbers of sub nodes of this node and its
+   * ancestors or subtracts the subtree of a removed child. If the number of the child is not
+   * known, the numbers of the ancestors will not be known anymore.
+   * @param sign 1 for an inserted child, -1 for a removed child.
+   */
+  private void updateSubNodeCounts(MutableTaskNode child, int sign) {
+    final int childCount = child.subNodeCount;
+    TreeNode node = this;
+    while (node instanceof MutableTaskNode
+        && ((MutableTaskNode) node).subNodeCount != UNKNOWN_COUNT) {
+      final MutableTaskNode ancestor = (MutableTaskNode) node;
+      if (childCount == UNKNOWN_COUNT)
+        ancestor.subNodeCount = UNKNOWN_COUNT;
+      else ancestor.subNodeCount = ancestor.subNodeCount + sign * (childCount + 1);
+      node = ancestor.parent;
     }
   }
 
@@ -121,32 +360,227 @@ public class MutableTaskNode implements MutableTreeNode {
     return task;
   }
 
+  public long getID() {
+    return id;
+  }
+
+  /**
+   * Sets the id of the node, e.g. to the id of the same task in another tree. The caller
+   * has to make sure that the id is unique in the tree.
+   */
+  public void setID(long id) {
+    this.id = id;
+    reserveID(id);
+  }
+
+  /**
+   * Makes sure that new ids are higher than an id that was read, but not given to a node
+   * yet.
+   */
+  public static void reserveID(long id) {
+    long next = NEXT_ID.get();
+    while (id >= next && !NEXT_ID.compareAndSet(next, id + 1))
+      next = NEXT_ID.get();
+  }
+
+  /** Returns a new id that was not used by any node before. */
+  public static long createID() {
+    return NEXT_ID.getAndIncrement();
+  }
+
+  /**
+   * Marks this node and all its ancestors as changed. Has to be called after the task of
+   * the node was changed.
+   */
+  public void markChanged() {
+    TreeNode node = this;
+    while (node instanceof MutableTaskNode && (!((MutableTaskNode) node).changed
+        || ((MutableTaskNode) node).snapshot != null)) {
+      ((MutableTaskNode) node).changed = true;
+      ((MutableTaskNode) node).snapshot = null;
+      node = node.getParent();
+    }
+  }
+
+  /** Returns true, if this node or one of its sub nodes was changed. */
+  public boolean hasChanged() {
+    return changed;
+  }
+
   public String toString() {
     return "MutableTaskNode{" +
-        "task=" + task +
-        ", parent=" + parent +
-        ", children=" + children.size() +
+        "id=" + id +
+        ", task=" + task +
+        ", parent=" + (parent instanceof MutableTaskNode
+            ? ((MutableTaskNode) parent).getID() : parent) +
+        ", children=" + getChildCount() +
         '}';
   }
 
   public static MutableTaskNode getRootInstance() {
+    return new MutableTaskNode(getRootTask(), ROOT_ID);
+  }
+
+  /** Returns a new task that can be used as the task of a root node. */
+  public static Task getRootTask() {
     final Task task = new Task();
     task.setName(I18nSupport.getValue(BundleStrings.COMPONENTS, "text.my.list"));
-    return new MutableTaskNode(task);
+    return task;
   }
 
-  public int countAllSubNodes() {
-    int sum = getChildCount();
-    for (MutableTaskNode node : children) {
-      sum = getTotalChildCount(node, node.getChildCount() + sum);
+  /**
+   * Creates a deep copy of this node and its sub nodes. The copy shares neither nodes nor
+   * tasks with this node, so it can be read by another thread while this node will be
+   * edited. Children that were not loaded yet will not be created for the copy, so only the
+   * sub nodes of nodes whose copy {@link #isLoaded()} will be copied.
+   */
+  public MutableTaskNode copySubtree() {
+    final MutableTaskNode copy = copyNode(new Task(task));
+    final Deque<MutableTaskNode> originals = new ArrayDeque<MutableTaskNode>();
+    final Deque<MutableTaskNode> copies = new ArrayDeque<MutableTaskNode>();
+    originals.push(this);
+    copies.push(copy);
+    while (!originals.isEmpty()) {
+      final MutableTaskNode original = originals.pop();
+      final MutableTaskNode parentCopy = copies.pop();
+      if (parentCopy.isLoaded()) {
+        for (MutableTaskNode child : original.children) {
+          final MutableTaskNode childCopy = child.copyNode(new Task(child.task));
+          parentCopy.addChild(childCopy, parentCopy.children.size());
+          originals.push(child);
+          copies.push(childCopy);
+        }
+      }
     }
-    return sum;
+    return copy;
   }
 
-  private int getTotalChildCount(MutableTaskNode subNode, int init) {
-    for (MutableTaskNode node : subNode.children) {
-      init = getTotalChildCount(node, node.getChildCount() + init);
+  /**
+   * Returns true, if all nodes of the subtree of this node created their children, so the
+   * subtree can be walked without reading tasks on demand.
+   */
+  public boolean isSubtreeLoaded() {
+    final Deque<MutableTaskNode> nodes = new ArrayDeque<MutableTaskNode>();
+    nodes.push(this);
+    while (!nodes.isEmpty()) {
+      final MutableTaskNode node = nodes.pop();
+      if (!node.isLoaded())
+        return false;
+      for (MutableTaskNode child : node.children)
+        nodes.push(child);
     }
-    return init;
+    return true;
+  }
+
+  /**
+   * Returns an immutable snapshot of this node and its sub nodes, which can be read by any
+   * number of threads while this node will be edited. Only the nodes that changed since the
+   * last snapshot are copied. Nodes whose children were not loaded yet are snapshot without
+   * their children, the snapshot creates them on demand like a copy of the node does.
+   * Has to be called on the thread that edits the tree.
+   */
+  public TaskSnapshot snapshot() {
+    if (snapshot != null)
+      return snapshot;
+
+    new TreeTraversal.OfNodes<MutableTaskNode>() {
+      /* the task copies of the entered nodes by depth */
+      private Task[] tasks = new Task[32];
+
+      protected boolean enter(MutableTaskNode node, int depth) {
+        if (node.snapshot != null)
+          return false;
+        final Task taskCopy = new Task(node.task);
+        final MutableTaskNode copy = node.copyNode(taskCopy);
+        if (!copy.isLoaded()) {
+          node.snapshot = new TaskSnapshot(copy);
+          return false;
+        }
+        if (depth == tasks.length)
+          tasks = Arrays.copyOf(tasks, 2 * depth);
+        tasks[depth] = taskCopy;
+        return true;
+      }
+
+      protected void leave(MutableTaskNode node, int depth) {
+        if (node.snapshot == null) {
+          final TaskSnapshot[] childSnapshots = new TaskSnapshot[node.children.size()];
+          for (int index = 0; index < childSnapshots.length; index++)
+            childSnapshots[index] = node.children.get(index).snapshot;
+          node.snapshot = new TaskSnapshot(node.id, tasks[depth], childSnapshots);
+          tasks[depth] = null;
+        }
+      }
+    }.traverse(this);
+    return snapshot;
+  }
+
+  /**
+   * Creates a new tree of a snapshot. The tree shares no tasks with the snapshot, snapshots
+   * of nodes that were not loaded become copies of these nodes.
+   */
+  static MutableTaskNode createTree(TaskSnapshot root) {
+    final MutableTaskNode rootNode = root.createNode();
+    final Deque<TaskSnapshot> snapshots = new ArrayDeque<TaskSnapshot>();
+    final Deque<MutableTaskNode> nodes = new ArrayDeque<MutableTaskNode>();
+    snapshots.push(root);
+    nodes.push(rootNode);
+    while (!snapshots.isEmpty()) {
+      final TaskSnapshot snapshot = snapshots.pop();
+      final MutableTaskNode node = nodes.pop();
+      if (node.isLoaded()) {
+        for (int index = 0; index < snapshot.getChildCount(); index++) {
+          final TaskSnapshot childSnapshot = snapshot.getChildAt(index);
+          final MutableTaskNode child = childSnapshot.createNode();
+          node.addChild(child, node.children.size());
+          snapshots.push(childSnapshot);
+          nodes.push(child);
+        }
+      }
+    }
+    return rootNode;
+  }
+
+  /**
+   * Returns the number of all sub nodes of this node. If the number is not known yet, the
+   * subtree is counted without recursion and the numbers of all its nodes will be known
+   * afterwards.
+   */
+  public int countAllSubNodes() {
+    if (subNodeCount != UNKNOWN_COUNT)
+      return subNodeCount;
+
+    new TreeTraversal.OfNodes<MutableTaskNode>() {
+      /* the sums of the sub nodes of the entered nodes by depth */
+      private int[] sums = new int[32];
+
+      protected boolean enter(MutableTaskNode node, int depth) {
+        if (node.subNodeCount != UNKNOWN_COUNT) {
+          sums[depth-1] = sums[depth-1] + node.subNodeCount + 1;
+          return false;
+        }
+        if (depth == sums.length)
+          sums = Arrays.copyOf(sums, 2 * depth);
+        sums[depth] = 0;
+        return true;
+      }
+
+      protected void leave(MutableTaskNode node, int depth) {
+        if (node.subNodeCount == UNKNOWN_COUNT) {
+          node.subNodeCount = sums[depth];
+          if (depth > 0)
+            sums[depth-1] = sums[depth-1] + sums[depth] + 1;
+        }
+      }
+    }.traverse(this);
+    return subNodeCount;
+  }
+
+  /**
+   * Sets the number of all sub nodes of a node whose children will be created on demand, so
+   * it is known without creating them. Has to be called before the node will be inserted.
+   */
+  protected void setKnownSubNodeCount(int count) {
+    subNodeCount = count;
   }
-}
\ No newline at end of file
+}
@@ -11,8 +11,8 @@ import java.util.Calendar;
  * Date: 04.12.12
  * Time: 22:54
  *
- * The getter and setter of this class must not be changed because they will be used for
- * reflection purposes.
+ * The getter and setter of this class must not be changed because they are called by the
+ * columns of {@link TaskColumn}.
  */
 public class Task {
   private String name;
@@ -39,6 +39,12 @@ public class Task {
     setDescription(description);
   }
 
+  /** Creates a copy of a task. */
+  public Task(Task task) {
+    this(task.name, task.permanent, task.dueDate, task.attribution, task.priority,
+        task.description);
+  }
+
   /* Methods */
 
   public boolean equals(Object o) {
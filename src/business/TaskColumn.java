@@ -0,0 +1,73 @@
+package business;
+
+import dto.TaskProperty.Attribution;
+import dto.TaskProperty.Priority;
+
+/**
+ * The task properties that are shown as columns of the task table, in the order of the
+ * columns. The values are read and written by direct calls of the getters and setters of
+ * {@link Task}. The calls are selected by a switch in one method, so a cell access is a
+ * simple call the JIT can inline, without reflection, exceptions or boxing.
+ */
+public enum TaskColumn {
+  NAME("name", String.class), //NON-NLS
+  PERMANENT("permanent", Boolean.class), //NON-NLS
+  DUE_DATE("dueDate", Long.class), //NON-NLS
+  ATTRIBUTION("attribution", Attribution.class), //NON-NLS
+  PRIORITY("priority", Priority.class), //NON-NLS
+  DESCRIPTION("description", String.class); //NON-NLS
+
+  private static final TaskColumn[] COLUMNS = values();
+
+  private final String property;
+  private final Class<?> type;
+
+  TaskColumn(String property, Class<?> type) {
+    this.property = property;
+    this.type = type;
+  }
+
+  /** Returns the column of an index, the same as values()[index] without copying. */
+  public static TaskColumn get(int index) {
+    return COLUMNS[index];
+  }
+
+  public static int count() {
+    return COLUMNS.length;
+  }
+
+  public Object getValue(Task task) {
+    switch (this) {
+      case NAME: return task.getName();
+      case PERMANENT: return task.isPermanent();
+      case DUE_DATE: return task.getDueDate();
+      case ATTRIBUTION: return task.getAttribution();
+      case PRIORITY: return task.getPriority();
+      default: return task.getDescription();
+    }
+  }
+
+  /**
+   * Sets the value of the property of a task.
+   * @throws ClassCastException The value is not of the type of the column.
+   */
+  public void setValue(Task task, Object value) {
+    switch (this) {
+      case NAME: task.setName((String) value); break;
+      case PERMANENT: task.setPermanent((Boolean) value); break;
+      case DUE_DATE: task.setDueDate((Long) value); break;
+      case ATTRIBUTION: task.setAttribution((Attribution) value); break;
+      case PRIORITY: task.setPriority((Priority) value); break;
+      default: task.setDescription((String) value);
+    }
+  }
+
+  /** Returns the name of the property, e.g. to find the column header. */
+  public String getProperty() {
+    return property;
+  }
+
+  public Class<?> getType() {
+    return type;
+  }
+}
@@ -0,0 +1,114 @@
+package business;
+
+/**
+ * An immutable copy of a node and its sub nodes as they were when
+ * {@link MutableTaskNode#snapshot()} was called. Snapshots can be read by any number of
+ * threads without locks while the tree is edited. Successive snapshots of a tree share the
+ * snapshots of all subtrees that did not change in between.
+ * <p/>
+ * The snapshot of a node whose children were not loaded keeps an unloaded copy of the node,
+ * which creates the children when they are read for the first time. Two threads may create
+ * them at the same time, both get equal snapshots.
+ */
+public final class TaskSnapshot {
+  private static final TaskSnapshot[] NO_CHILDREN = new TaskSnapshot[0];
+
+  private final long id;
+  private final Task task;
+  private final int subNodeCount;
+  /* an unloaded copy of the node that creates the children or null */
+  private final MutableTaskNode unloaded;
+  private volatile TaskSnapshot[] children;
+
+  /* Constructors */
+
+  /** Creates the snapshot of a loaded node. */
+  TaskSnapshot(long id, Task task, TaskSnapshot[] children) {
+    this.id = id;
+    this.task = task;
+    this.children = children;
+    unloaded = null;
+    int count = children.length;
+    for (TaskSnapshot child : children)
+      count = count + child.subNodeCount;
+    subNodeCount = count;
+  }
+
+  /**
+   * Creates the snapshot of a node whose children were not loaded.
+   * @param unloaded A copy of the node that is used by nothing else.
+   */
+  TaskSnapshot(MutableTaskNode unloaded) {
+    id = unloaded.getID();
+    task = unloaded.getTask();
+    subNodeCount = unloaded.countAllSubNodes();
+    this.unloaded = unloaded;
+    children = null;
+  }
+
+  /* Methods */
+
+  private TaskSnapshot[] getChildren() {
+    TaskSnapshot[] result = children;
+    if (result == null) {
+      /* the unloaded copy must stay unloaded, so its copy loads the children */
+      final MutableTaskNode node = unloaded.copyNode(new Task(task));
+      result = node.getChildCount() == 0 ? NO_CHILDREN : new TaskSnapshot[node.getChildCount()];
+      for (int index = 0; index < result.length; index++) {
+        final MutableTaskNode child = (MutableTaskNode) node.getChildAt(index);
+        if (child.isLoaded() && child.getChildCount() == 0)
+          result[index] = new TaskSnapshot(child.getID(), child.getTask(), NO_CHILDREN);
+        else result[index] = new TaskSnapshot(child);
+      }
+      children = result;
+    }
+    return result;
+  }
+
+  public TaskSnapshot getChildAt(int index) {
+    return getChildren()[index];
+  }
+
+  public int getChildCount() {
+    final TaskSnapshot[] result = children;
+    return result != null ? result.length : unloaded.getChildCount();
+  }
+
+  public int countAllSubNodes() {
+    return subNodeCount;
+  }
+
+  /**
+   * Creates a new tree of this snapshot, e.g. to write it. The tree can be edited, it does
+   * not share any task with the snapshot.
+   */
+  public MutableTaskNode createTree() {
+    return MutableTaskNode.createTree(this);
+  }
+
+  /** Creates a node of this snapshot without its children. */
+  MutableTaskNode createNode() {
+    if (unloaded != null)
+      return unloaded.copyNode(new Task(task));
+    return new MutableTaskNode(new Task(task), id);
+  }
+
+  public String toString() {
+    return "TaskSnapshot{" +
+        "id=" + id +
+        ", task=" + task +
+        ", subNodes=" + subNodeCount +
+        '}';
+  }
+
+  /* Getter and Setter */
+
+  public long getID() {
+    return id;
+  }
+
+  /** Returns the task of the snapshot, which must not be changed. */
+  public Task getTask() {
+    return task;
+  }
+}
@@ -0,0 +1,275 @@
+package business;
+
+import dto.TaskProperty.Attribution;
+import dto.TaskProperty.Priority;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the tasks of a read list in columns of primitive arrays instead of an object per
+ * task. Texts are kept once in a pool and referred by their index, the tree is kept by the
+ * indices of the parent, the first child and the next sibling of every task and its number
+ * of children is counted while the tasks are added. A task needs 43 bytes in the columns,
+ * the texts not counted.
+ * <p/>
+ * The tasks have to be added in depth first order, i.e. the parent of a task is the last
+ * added task or one of its ancestors. The root returned by {@link #getRoot()} creates the
+ * nodes and tasks of the store on demand, so only the tasks whose parents were accessed
+ * need objects. The store does not change after the root was returned, so the nodes of a
+ * copied tree may be created by other threads.
+ * <p/>
+ * The store keeps the tasks of lists in the XML format. Lists in the binary format keep
+ * their tasks as the records of the file, see data.RecordTaskStore. In both cases a
+ * task that was accessed once is an ordinary {@link Task} of a {@link MutableTaskNode},
+ * which are not views over the store, because the tasks are edited, undone and snapshot as
+ * objects.
+ */
+public class TaskStore {
+  /** Index of the parent of the top level tasks */
+  public static final int ROOT = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+  private static final byte FLAG_PERMANENT = 1;
+  private static final Attribution[] ATTRIBUTIONS = Attribution.values();
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private long[] ids;
+  private long[] dueDates;
+  private byte[] attributions;
+  private byte[] priorities;
+  private byte[] flags;
+  private int[] names;
+  private int[] descriptions;
+  private int[] parents;
+  private int[] firstChildren;
+  private int[] nextSiblings;
+  private int[] childCounts;
+  private int size;
+  private int firstRootChild;
+  private int rootChildCount;
+
+  private String[] strings;
+  private int stringCount;
+  /* only needed while the tasks are added */
+  private Map<String, Integer> stringIndices;
+  /* the tasks from the last added task up to the top level while the tasks are added */
+  private int[] path;
+  private int pathLength;
+
+  /* Constructors */
+
+  public TaskStore() {
+    ids = new long[INITIAL_CAPACITY];
+    dueDates = new long[INITIAL_CAPACITY];
+    attributions = new byte[INITIAL_CAPACITY];
+    priorities = new byte[INITIAL_CAPACITY];
+    flags = new byte[INITIAL_CAPACITY];
+    names = new int[INITIAL_CAPACITY];
+    descriptions = new int[INITIAL_CAPACITY];
+    parents = new int[INITIAL_CAPACITY];
+    firstChildren = new int[INITIAL_CAPACITY];
+    nextSiblings = new int[INITIAL_CAPACITY];
+    childCounts = new int[INITIAL_CAPACITY];
+    size = 0;
+    firstRootChild = ROOT;
+    rootChildCount = 0;
+
+    strings = new String[INITIAL_CAPACITY];
+    stringCount = 0;
+    stringIndices = new HashMap<String, Integer>();
+    path = new int[INITIAL_CAPACITY];
+    pathLength = 0;
+  }
+
+  /* Methods */
+
+  /**
+   * Appends a task as last child of a task.
+   * @param parent Index of the parent task or {@link #ROOT} for a top level task.
+   * @param id Id of the node of the task.
+   * @return Index of the added task.
+   * @throws IllegalArgumentException The parent is neither the last added task nor one of
+   * its ancestors.
+   * @throws IllegalStateException The root of the store was already returned.
+   */
+  public int add(int parent, long id, String name, Boolean permanent, Long dueDate,
+                 Attribution attribution, Priority priority, String description) {
+    if (stringIndices == null)
+      throw new IllegalStateException("The store was already completed!");
+
+    /* the last child of the parent is the task on the path directly after the parent */
+    int previousSibling = ROOT;
+    while (pathLength > 0 && path[pathLength-1] != parent)
+      previousSibling = path[--pathLength];
+    if (parent != ROOT && pathLength == 0)
+      throw new IllegalArgumentException("The parent " + parent + " is not on the path!");
+
+    if (size == ids.length)
+      grow();
+    final int index = size++;
+    ids[index] = id;
+    setDescription(index, description);
+    names[index] = getStringIndex(name != null ? name : "");
+    flags[index] = permanent != null && permanent ? FLAG_PERMANENT : 0;
+    dueDates[index] = dueDate != null ? dueDate : Long.MAX_VALUE;
+    attributions[index] = (byte) (attribution != null
+        ? attribution : Attribution.NOTHING).ordinal();
+    priorities[index] = (byte) (priority != null ? priority : Priority.MEDIUM).ordinal();
+    parents[index] = parent;
+    firstChildren[index] = ROOT;
+    nextSiblings[index] = ROOT;
+    childCounts[index] = 0;
+    if (parent != ROOT) childCounts[parent]++;
+    else rootChildCount++;
+
+    if (previousSibling != ROOT) nextSiblings[previousSibling] = index;
+    else if (parent != ROOT) firstChildren[parent] = index;
+    else firstRootChild = index;
+
+    if (pathLength == path.length)
+      path = Arrays.copyOf(path, 2 * pathLength);
+    path[pathLength++] = index;
+    MutableTaskNode.reserveID(id);
+    return index;
+  }
+
+  /** Sets the description of an added task, as long as the root was not returned. */
+  public void setDescription(int index, String description) {
+    if (stringIndices == null)
+      throw new IllegalStateException("The store was already completed!");
+    descriptions[index] = getStringIndex(description != null ? description : "");
+  }
+
+  private int getStringIndex(String text) {
+    final Integer known = stringIndices.get(text);
+    if (known != null)
+      return known;
+    if (stringCount == strings.length)
+      strings = Arrays.copyOf(strings, stringCount + (stringCount >> 1));
+    strings[stringCount] = text;
+    stringIndices.put(text, stringCount);
+    return stringCount++;
+  }
+
+  private void grow() {
+    final int capacity = size + (size >> 1);
+    ids = Arrays.copyOf(ids, capacity);
+    dueDates = Arrays.copyOf(dueDates, capacity);
+    attributions = Arrays.copyOf(attributions, capacity);
+    priorities = Arrays.copyOf(priorities, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    names = Arrays.copyOf(names, capacity);
+    descriptions = Arrays.copyOf(descriptions, capacity);
+    parents = Arrays.copyOf(parents, capacity);
+    firstChildren = Arrays.copyOf(firstChildren, capacity);
+    nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    childCounts = Arrays.copyOf(childCounts, capacity);
+  }
+
+  /**
+   * Completes the store and returns a new root whose children are the top level tasks. No
+   * task can be added afterwards.
+   */
+  public MutableTaskNode getRoot() {
+    if (stringIndices != null) {
+      stringIndices = null;
+      path = null;
+      ids = Arrays.copyOf(ids, size);
+      dueDates = Arrays.copyOf(dueDates, size);
+      attributions = Arrays.copyOf(attributions, size);
+      priorities = Arrays.copyOf(priorities, size);
+      flags = Arrays.copyOf(flags, size);
+      names = Arrays.copyOf(names, size);
+      descriptions = Arrays.copyOf(descriptions, size);
+      parents = Arrays.copyOf(parents, size);
+      firstChildren = Arrays.copyOf(firstChildren, size);
+      nextSiblings = Arrays.copyOf(nextSiblings, size);
+      childCounts = Arrays.copyOf(childCounts, size);
+      strings = Arrays.copyOf(strings, stringCount);
+    }
+    return new StoredTaskNode(this, MutableTaskNode.getRootTask(), MutableTaskNode.ROOT_ID,
+        ROOT, size);
+  }
+
+  /** Returns the number of tasks in the store. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the index of the parent of a task or {@link #ROOT} for a top level task. */
+  public int getParent(int index) {
+    return parents[index];
+  }
+
+  private int getFirstChild(int index) {
+    return index == ROOT ? firstRootChild : firstChildren[index];
+  }
+
+  private int getChildCount(int index) {
+    return index == ROOT ? rootChildCount : childCounts[index];
+  }
+
+  /** Creates a new task object of a task in the store. */
+  public Task createTask(int index) {
+    return new Task(strings[names[index]], (flags[index] & FLAG_PERMANENT) != 0,
+        dueDates[index], ATTRIBUTIONS[attributions[index]], PRIORITIES[priorities[index]],
+        strings[descriptions[index]]);
+  }
+
+  /* Inner classes */
+
+  /**
+   * A node whose children are created from the store when they are accessed for the first
+   * time. The tasks of a subtree follow their root in the store, so the end of the subtree
+   * of a child is the next sibling or the end of the subtree of the parent.
+   */
+  private static class StoredTaskNode extends MutableTaskNode {
+    private final TaskStore store;
+    private final int index;
+    /* index after the last descendant */
+    private final int end;
+    private boolean loaded;
+
+    private StoredTaskNode(TaskStore store, Task task, long id, int index, int end) {
+      super(task, id);
+      this.store = store;
+      this.index = index;
+      this.end = end;
+      loaded = store.getFirstChild(index) == ROOT;
+      setKnownSubNodeCount(end - index - 1);
+    }
+
+    protected void loadChildren() {
+      if (!loaded) {
+        loaded = true;
+        for (int child = store.getFirstChild(index); child != ROOT;
+             child = store.nextSiblings[child]) {
+          final int next = store.nextSiblings[child];
+          addLoadedChild(new StoredTaskNode(store, store.createTask(child), store.ids[child],
+              child, next != ROOT ? next : end));
+        }
+      }
+    }
+
+    protected void discardUnloadedChildren() {
+      loaded = true;
+    }
+
+    public int getChildCount() {
+      return loaded ? super.getChildCount() : store.getChildCount(index);
+    }
+
+    protected boolean isLoaded() {
+      return loaded;
+    }
+
+    /** An unchanged node is copied as node that creates its children from the store again. */
+    protected MutableTaskNode copyNode(Task taskCopy) {
+      if (!loaded || !hasChanged())
+        return new StoredTaskNode(store, taskCopy, getID(), index, end);
+      else return super.copyNode(taskCopy);
+    }
+  }
+}
@@ -1,21 +1,23 @@
 package business;
 
-import data.LoggingUtility;
-import dto.ReflectionUtility;
+import dto.DTOTask;
 import gui.treeTable.AbstractTreeTableModel;
 import gui.treeTable.TreeTableModel;
 import i18n.I18nSupport;
 
-import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.Set;
 
 import static i18n.BundleStrings.COMPONENTS;
 
@@ -25,17 +27,17 @@ import static i18n.BundleStrings.COMPONENTS;
  * Time: 16:24
  */
 public class TaskTreeTableModel extends AbstractTreeTableModel {
-  private static final List<Method> GETTER = ReflectionUtility.getSortedGetters(Task.class);
-  private static final List<Method> SETTER = ReflectionUtility.getSortedSetters(Task.class);
-  private static final Logger LOGGER =
-      LoggingUtility.getLogger(TaskTreeTableModel.class.getName());
+  /** Default estimated bytes the undo and redo edits may keep */
+  public static final long DEFAULT_UNDO_BUDGET = 32L << 20;
   private static final int TREE_COLUMN = 0;
 
   private List<String> columnNames;
+  private final UndoLog undoLog;
 
   public TaskTreeTableModel(MutableTaskNode rootNode) {
     super(rootNode);
     root = rootNode;
+    undoLog = new UndoLog(DEFAULT_UNDO_BUDGET);
     updateLocale();
   }
 
@@ -48,11 +50,10 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
    * Sets the column names of the table header.
    */
   public void updateLocale() {
-    List<Field> getterSetterFields = ReflectionUtility.getterSetterFields(Task.class);
-    columnNames = new ArrayList<String>(getterSetterFields.size()+1);
+    columnNames = new ArrayList<String>(TaskColumn.count()+1);
     columnNames.add(I18nSupport.getValue(COMPONENTS, "text.tree.header"));
-    for (Field field : getterSetterFields)
-      columnNames.add(I18nSupport.getValue(COMPONENTS, "text." + field.getName()));
+    for (TaskColumn column : TaskColumn.values())
+      columnNames.add(I18nSupport.getValue(COMPONENTS, "text." + column.getProperty()));
   }
 
   public Object getChild(Object parent, int index) {
@@ -85,8 +86,8 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
       return TreeTableModel.class;
 
     final int index = columnIndex-1;
-    checkIndex(index, GETTER.size());
-    return GETTER.get(index).getReturnType();
+    checkIndex(index, TaskColumn.count());
+    return TaskColumn.get(index).getType();
   }
 
   public int getTreeColumn() {
@@ -98,15 +99,9 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
       return null;
 
     int index = columnIndex-1;
-    checkIndex(index, GETTER.size());
-    try {
-      if(node != null)
-        return GETTER.get(index).invoke(((MutableTaskNode) node).getTask());
-    } catch (IllegalAccessException e) {
-      LOGGER.severe("Illegal access on a task: " + e.getMessage());
-    } catch (InvocationTargetException e) {
-      LOGGER.severe("Could not invoke getter on a task: " + e.getMessage());
-    }
+    checkIndex(index, TaskColumn.count());
+    if(node != null)
+      return TaskColumn.get(index).getValue(((MutableTaskNode) node).getTask());
     return null;
   }
 
@@ -114,21 +109,174 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
     return true; /* Important to activate TreeExpandListener */
   }
 
+  /**
+   * Sets the value of a task property and notifies the listeners with a
+   * {@link javax.swing.event.TreeModelListener#treeNodesChanged} event, if the value differs
+   * from the current one.
+   */
   public void setValueAt(Object value, Object node, int columnIndex) {
     if(columnIndex == TREE_COLUMN)
       return;
 
     int index = columnIndex-1;
-    checkIndex(index, SETTER.size());
-    try {
-      final Method setter = SETTER.get(index);
-      if(value != null && value.getClass().equals(setter.getParameterTypes()[0]) && node != null)
-        setter.invoke(((MutableTaskNode) node).getTask(), value);
-    } catch (IllegalAccessException e) {
-      LOGGER.severe("Illegal access on a task: " + e.getMessage());
-    } catch (InvocationTargetException e) {
-      LOGGER.severe("Could not invoke getter on a task: " + e.getMessage());
+    checkIndex(index, TaskColumn.count());
+    final TaskColumn column = TaskColumn.get(index);
+    if(value != null && column.getType().isInstance(value) && node != null
+        && !value.equals(getValueAt(node, columnIndex))) {
+      final Task previous = new Task(((MutableTaskNode) node).getTask());
+      column.setValue(((MutableTaskNode) node).getTask(), value);
+      undoLog.recordChange((MutableTaskNode) node, previous);
+      taskChanged((MutableTaskNode) node);
+    }
+  }
+
+  /**
+   * Changes all non null fields of the task of the path to the values of dtoTask.
+   * @param path Path of the task to change.
+   * @param dtoTask Contains the new values.
+   */
+  public void change(TreePath path, DTOTask dtoTask) {
+    final MutableTaskNode node = (MutableTaskNode) path.getLastPathComponent();
+    undoLog.recordChange(node, new Task(node.getTask()));
+    node.getTask().change(dtoTask);
+    taskChanged(node);
+  }
+
+  /** Marks the node as changed and notifies the listeners. */
+  private void taskChanged(MutableTaskNode node) {
+    node.markChanged();
+    final TreeNode parent = node.getParent();
+    if(parent == null)
+      fireTreeNodesChanged(this, new Object[]{node}, null, null);
+    else fireTreeNodesChanged(this, getPathToRoot(parent), new int[]{parent.getIndex(node)},
+        new Object[]{node});
+  }
+
+  /**
+   * Changes the tree of this model into a tree that was read again from a file, e.g. after
+   * another program changed the file. Only the differences between the trees will be
+   * applied, so that expanded and selected tasks remain. The children of two nodes are
+   * compared by skipping their equal beginning and end. The remaining children are changed
+   * pairwise and the surplus children are removed or inserted. The listeners are notified
+   * of every difference. The children of a node that were never loaded are neither shown
+   * nor referenced, so they are not compared but replaced as a whole by the read children.
+   * @param newRoot Root of the tree that was read again. Its nodes may be moved into the
+   *                tree of this model, so it must not be used afterwards.
+   * @return The number of changed, removed and inserted tasks and of replaced subtrees.
+   */
+  public int merge(MutableTaskNode newRoot) {
+    /* the recorded edits do not refer to the tree of the file */
+    undoLog.clear();
+    int differences = 0;
+    final Deque<MutableTaskNode[]> pairs = new ArrayDeque<MutableTaskNode[]>();
+    pairs.push(new MutableTaskNode[]{(MutableTaskNode) root, newRoot});
+    while (!pairs.isEmpty()) {
+      final MutableTaskNode[] pair = pairs.pop();
+      differences = differences + mergeChildren(pair[0], pair[1], pairs);
     }
+    return differences;
+  }
+
+  /**
+   * Applies the differences between the children of two nodes to the children of the old
+   * node. The pairs of children that have to be compared as well are pushed onto the stack.
+   */
+  private int mergeChildren(MutableTaskNode oldNode, MutableTaskNode newNode,
+                            Deque<MutableTaskNode[]> pairs) {
+    if (!oldNode.isLoaded()) {
+      oldNode.replaceChildren(newNode);
+      fireTreeStructureChanged(this, getPathToRoot(oldNode), null, null);
+      return 1;
+    }
+
+    final int oldCount = oldNode.getChildCount();
+    final int newCount = newNode.getChildCount();
+    int start = 0;
+    while (start < oldCount && start < newCount
+        && getTask(oldNode, start).equals(getTask(newNode, start)))
+      start++;
+    int oldEnd = oldCount;
+    int newEnd = newCount;
+    while (oldEnd > start && newEnd > start
+        && getTask(oldNode, oldEnd-1).equals(getTask(newNode, newEnd-1))) {
+      oldEnd--;
+      newEnd--;
+    }
+    final int paired = Math.min(oldEnd, newEnd) - start;
+
+    /* the paired children take the ids of the read tree */
+    for (int index = 0; index < oldCount; index++) {
+      final int newIndex = index < oldEnd ? index : index - oldEnd + newEnd;
+      if (index < start + paired || index >= oldEnd) {
+        final MutableTaskNode oldChild = (MutableTaskNode) oldNode.getChildAt(index);
+        final MutableTaskNode newChild = (MutableTaskNode) newNode.getChildAt(newIndex);
+        if (oldChild.getID() != newChild.getID()) {
+          oldChild.setID(newChild.getID());
+          oldChild.markChanged();
+        }
+        pairs.push(new MutableTaskNode[]{oldChild, newChild});
+      }
+    }
+
+    int changed = 0;
+    final int[] changedIndices = new int[paired];
+    final Object[] changedNodes = new Object[paired];
+    for (int index = start; index < start + paired; index++) {
+      final Task task = getTask(newNode, index);
+      if (!getTask(oldNode, index).equals(task)) {
+        final MutableTaskNode child = (MutableTaskNode) oldNode.getChildAt(index);
+        child.setUserObject(task);
+        child.markChanged();
+        changedIndices[changed] = index;
+        changedNodes[changed] = child;
+        changed++;
+      }
+    }
+    final int removed = oldEnd - start - paired;
+    final int inserted = newEnd - start - paired;
+    if (changed == 0 && removed == 0 && inserted == 0)
+      return 0;
+
+    final Object[] path = getPathToRoot(oldNode);
+    if (changed > 0) {
+      fireTreeNodesChanged(this, path, Arrays.copyOf(changedIndices, changed),
+          Arrays.copyOf(changedNodes, changed));
+    }
+
+    if (removed > 0) {
+      final int[] indices = new int[removed];
+      final Object[] nodes = new Object[removed];
+      for (int index = removed-1; index >= 0; index--) {
+        indices[index] = start + paired + index;
+        nodes[index] = oldNode.getChildAt(indices[index]);
+        oldNode.remove(indices[index]);
+      }
+      fireTreeNodesRemoved(this, path, indices, nodes);
+    }
+
+    if (inserted > 0) {
+      final int[] indices = new int[inserted];
+      final Object[] nodes = new Object[inserted];
+      for (int index = 0; index < inserted; index++) {
+        indices[index] = start + paired + index;
+        nodes[index] = newNode.getChildAt(indices[index]);
+      }
+      for (int index = 0; index < inserted; index++)
+        oldNode.insert((MutableTaskNode) nodes[index], indices[index]);
+      fireTreeNodesInserted(this, path, indices, nodes);
+    }
+    return changed + removed + inserted;
+  }
+
+  private static Task getTask(MutableTaskNode parent, int index) {
+    return ((MutableTaskNode) parent.getChildAt(index)).getTask();
+  }
+
+  private Object[] getPathToRoot(TreeNode node) {
+    final Deque<Object> path = new ArrayDeque<Object>();
+    for (TreeNode current = node; current != null; current = current.getParent())
+      path.addFirst(current);
+    return path.toArray();
   }
 
   public void add(TreePath parent, MutableTaskNode child){
@@ -137,7 +285,8 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
     final MutableTaskNode parentNode = (MutableTaskNode) parent.getLastPathComponent();
     int index = getChildCount(parentNode);
     parentNode.insert(child, index);
-    fireTreeNodesInserted(this, new Object[]{parent}, new int[]{index},
+    undoLog.recordInsert(parentNode, index, child);
+    fireTreeNodesInserted(this, parent.getPath(), new int[]{index},
         new Object[]{child});
   }
 
@@ -151,8 +300,10 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
       int index = getIndexOfChild(node.getParent(), node);
       removed = node.countAllSubNodes()+1;
       if(index != -1) {
-        ((MutableTaskNode) node.getParent()).remove(index);
-        fireTreeNodesRemoved(this, new Object[]{path.getParentPath()}, new int[]{index},
+        final MutableTaskNode parent = (MutableTaskNode) node.getParent();
+        parent.remove(index);
+        undoLog.recordRemove(parent, index, node);
+        fireTreeNodesRemoved(this, path.getParentPath().getPath(), new int[]{index},
             new Object[]{node});
       }
     }
@@ -163,16 +314,327 @@ public class TaskTreeTableModel extends AbstractTreeTableModel {
     final MutableTaskNode taskRoot = ((MutableTaskNode) getRoot());
     int removed = taskRoot.countAllSubNodes();
     final TreePath rootPath = new TreePath(root);
-    int[] indices = new int[removed];
-    Object[] nodes = new Object[removed];
+    int[] indices = new int[taskRoot.getChildCount()];
+    Object[] nodes = new Object[indices.length];
 
-    final Enumeration<MutableTaskNode> children = taskRoot.children();
-    for (int index = 0; children.hasMoreElements(); index++) {
+    /* removing from the end does not shift the following children */
+    undoLog.beginEdit();
+    for (int index = indices.length-1; index >= 0; index--) {
       indices[index] = index;
-      nodes[index] = children.nextElement();
-      taskRoot.remove((MutableTreeNode) nodes[index]);
+      nodes[index] = taskRoot.getChildAt(index);
+      taskRoot.remove(index);
+      undoLog.recordRemove(taskRoot, index, (MutableTaskNode) nodes[index]);
+    }
+    undoLog.endEdit();
+    fireTreeNodesRemoved(this, rootPath.getPath(), indices, nodes);
+    return removed;
+  }
+
+  /**
+   * Groups the following changes until {@link #endEdit()} to one edit, that will be undone
+   * and redone at once. The calls may be nested.
+   */
+  public void beginEdit() {
+    undoLog.beginEdit();
+  }
+
+  public void endEdit() {
+    undoLog.endEdit();
+  }
+
+  public boolean canUndo() {
+    return undoLog.canUndo();
+  }
+
+  public boolean canRedo() {
+    return undoLog.canRedo();
+  }
+
+  /**
+   * Reverts the last edit that was not undone. The operations of the edit are reverted in
+   * reverse order and the listeners are notified of every operation. A removed subtree is
+   * inserted again as a whole, so undoing the removal of a large subtree takes one insertion
+   * and one event.
+   * @return False, if there is no edit to undo.
+   */
+  public boolean undo() {
+    final UndoLog.Edit edit = undoLog.popUndo();
+    if (edit == null)
+      return false;
+    applyOperations(edit.getOperations(), true);
+    return true;
+  }
+
+  /**
+   * Applies the last undone edit again.
+   * @return False, if there is no edit to redo.
+   */
+  public boolean redo() {
+    final UndoLog.Edit edit = undoLog.popRedo();
+    if (edit == null)
+      return false;
+    applyOperations(edit.getOperations(), false);
+    return true;
+  }
+
+  /** Sets the estimated bytes the undo and redo edits may keep. */
+  public void setUndoBudget(long bytes) {
+    undoLog.setBudget(bytes);
+  }
+
+  /**
+   * Inserts nodes as consecutive children of a parent as one edit. The listeners get one
+   * event.
+   * @param index Index of the first inserted child.
+   */
+  public void insertNodes(MutableTaskNode parent, int index, List<MutableTaskNode> children) {
+    final List<UndoLog.Operation> operations =
+        new ArrayList<UndoLog.Operation>(children.size());
+    for (MutableTaskNode child : children) {
+      operations.add(new UndoLog.Operation(UndoLog.Kind.INSERT, parent, index, child, null));
+      index++;
     }
-    fireTreeNodesRemoved(this, new Object[]{rootPath}, indices, nodes);
+    recordAndApply(operations);
+  }
+
+  /**
+   * Removes nodes and their subtrees as one edit. A node below another removed node is removed
+   * with it, the root is not removed but all its children. The listeners get one event for the
+   * removed children of every parent.
+   * @return The number of removed tasks.
+   */
+  public int removeNodes(Collection<MutableTaskNode> nodes) {
+    final List<UndoLog.Operation> operations = createRemovals(getSubtreeRoots(nodes));
+    int removed = 0;
+    for (UndoLog.Operation operation : operations)
+      removed = removed + operation.node.countAllSubNodes() + 1;
+    recordAndApply(operations);
     return removed;
   }
+
+  /**
+   * Moves nodes and their subtrees to the end of the children of a new parent as one edit. A
+   * node below another moved node is moved with it. The listeners get one event for the
+   * removed children of every old parent and one event for the inserted children.
+   * @throws IllegalArgumentException The new parent is one of the moved nodes or below one.
+   */
+  public void moveNodes(Collection<MutableTaskNode> nodes, MutableTaskNode newParent) {
+    final List<MutableTaskNode> subtreeRoots = getSubtreeRoots(nodes);
+    final Set<MutableTaskNode> moved = Collections.newSetFromMap(
+        new IdentityHashMap<MutableTaskNode, Boolean>());
+    moved.addAll(subtreeRoots);
+    for (TreeNode node = newParent; node != null; node = node.getParent()) {
+      if (moved.contains(node))
+        throw new IllegalArgumentException("A node cannot be moved below itself!");
+    }
+
+    undoLog.beginEdit();
+    recordAndApply(createRemovals(subtreeRoots));
+    final List<UndoLog.Operation> insertions =
+        new ArrayList<UndoLog.Operation>(subtreeRoots.size());
+    int index = newParent.getChildCount();
+    for (MutableTaskNode node : subtreeRoots)
+      insertions.add(new UndoLog.Operation(UndoLog.Kind.INSERT, newParent, index++, node, null));
+    recordAndApply(insertions);
+    undoLog.endEdit();
+  }
+
+  /**
+   * Changes all non null fields of the tasks of nodes to the values of dtoTask as one edit.
+   * The listeners get one event for the changed children of every parent.
+   */
+  public void changeNodes(Collection<MutableTaskNode> nodes, DTOTask dtoTask) {
+    final Map<TreeNode, List<MutableTaskNode>> children = groupByParent(nodes);
+    final List<UndoLog.Operation> operations = new ArrayList<UndoLog.Operation>(nodes.size());
+    final Set<MutableTaskNode> changed = Collections.newSetFromMap(
+        new IdentityHashMap<MutableTaskNode, Boolean>());
+    for (List<MutableTaskNode> siblings : children.values()) {
+      for (MutableTaskNode node : siblings) {
+        if (!changed.add(node))
+          continue;
+        /* the operation keeps the version that is not in the tree */
+        final Task task = new Task(node.getTask());
+        task.change(dtoTask);
+        operations.add(new UndoLog.Operation(UndoLog.Kind.CHANGE, null, -1, node, task));
+      }
+    }
+    recordAndApply(operations);
+  }
+
+  /**
+   * Returns the nodes in their order without the ones below other nodes. The root is replaced
+   * by its children.
+   */
+  private List<MutableTaskNode> getSubtreeRoots(Collection<MutableTaskNode> nodes) {
+    final List<MutableTaskNode> candidates = new ArrayList<MutableTaskNode>(nodes.size());
+    for (MutableTaskNode node : nodes) {
+      if (node == root)
+        candidates.addAll(node.getChildList());
+      else candidates.add(node);
+    }
+    final Set<TreeNode> contained = Collections.newSetFromMap(
+        new IdentityHashMap<TreeNode, Boolean>());
+    contained.addAll(candidates);
+
+    final Set<TreeNode> added = Collections.newSetFromMap(
+        new IdentityHashMap<TreeNode, Boolean>());
+    final List<MutableTaskNode> subtreeRoots = new ArrayList<MutableTaskNode>(candidates.size());
+    for (MutableTaskNode node : candidates) {
+      TreeNode ancestor = node.getParent();
+      while (ancestor != null && !contained.contains(ancestor))
+        ancestor = ancestor.getParent();
+      if (ancestor == null && node.getParent() != null && added.add(node))
+        subtreeRoots.add(node);
+    }
+    return subtreeRoots;
+  }
+
+  /**
+   * Creates the removals of nodes grouped by their parents. The children of a parent are
+   * removed from the end, so the removals do not shift the indices of the following ones.
+   */
+  private List<UndoLog.Operation> createRemovals(List<MutableTaskNode> nodes) {
+    final List<UndoLog.Operation> operations = new ArrayList<UndoLog.Operation>(nodes.size());
+    for (Map.Entry<TreeNode, List<MutableTaskNode>> entry : groupByParent(nodes).entrySet()) {
+      final MutableTaskNode parent = (MutableTaskNode) entry.getKey();
+      final List<MutableTaskNode> siblings = entry.getValue();
+      final int[] indices = new int[siblings.size()];
+      final Object[] children = siblings.toArray();
+      for (int index = 0; index < indices.length; index++)
+        indices[index] = parent.getIndex(siblings.get(index));
+      sortByIndex(indices, children);
+      for (int index = indices.length-1; index >= 0; index--) {
+        operations.add(new UndoLog.Operation(UndoLog.Kind.REMOVE, parent, indices[index],
+            (MutableTaskNode) children[index], null));
+      }
+    }
+    return operations;
+  }
+
+  private static Map<TreeNode, List<MutableTaskNode>> groupByParent(
+      Collection<MutableTaskNode> nodes) {
+    final Map<TreeNode, List<MutableTaskNode>> children =
+        new LinkedHashMap<TreeNode, List<MutableTaskNode>>();
+    for (MutableTaskNode node : nodes) {
+      List<MutableTaskNode> siblings = children.get(node.getParent());
+      if (siblings == null) {
+        siblings = new ArrayList<MutableTaskNode>();
+        children.put(node.getParent(), siblings);
+      }
+      siblings.add(node);
+    }
+    return children;
+  }
+
+  private void recordAndApply(List<UndoLog.Operation> operations) {
+    undoLog.beginEdit();
+    for (UndoLog.Operation operation : operations)
+      undoLog.record(operation);
+    undoLog.endEdit();
+    applyOperations(operations, false);
+  }
+
+  /**
+   * Applies operations or reverts them in reverse order. The listeners get one event for every
+   * run of operations of the same kind below the same parent.
+   */
+  private void applyOperations(List<UndoLog.Operation> operations, boolean revert) {
+    final List<UndoLog.Operation> ordered = new ArrayList<UndoLog.Operation>(operations);
+    if (revert)
+      Collections.reverse(ordered);
+
+    int start = 0;
+    while (start < ordered.size()) {
+      final UndoLog.Operation first = ordered.get(start);
+      final TreeNode parent = getParent(first);
+      int end = start + 1;
+      while (end < ordered.size() && ordered.get(end).kind == first.kind
+          && getParent(ordered.get(end)) == parent)
+        end++;
+
+      final List<UndoLog.Operation> run = ordered.subList(start, end);
+      if (first.kind == UndoLog.Kind.CHANGE)
+        exchangeTasks(parent, run);
+      else if ((first.kind == UndoLog.Kind.INSERT) != revert)
+        insertChildren((MutableTaskNode) parent, run);
+      else removeChildren((MutableTaskNode) parent, run);
+      start = end;
+    }
+  }
+
+  private static TreeNode getParent(UndoLog.Operation operation) {
+    return operation.parent != null ? operation.parent : operation.node.getParent();
+  }
+
+  private void insertChildren(MutableTaskNode parent, List<UndoLog.Operation> run) {
+    final int[] indices = new int[run.size()];
+    final MutableTaskNode[] nodes = new MutableTaskNode[indices.length];
+    boolean ascending = true;
+    for (int index = 0; index < indices.length; index++) {
+      nodes[index] = run.get(index).node;
+      indices[index] = run.get(index).index;
+      ascending = ascending && (index == 0 || indices[index-1] < indices[index]);
+    }
+    /* ascending insertions do not shift each other, so they can be inserted at once */
+    if (ascending) {
+      parent.insert(nodes, indices);
+    } else {
+      for (UndoLog.Operation operation : run)
+        parent.insert(operation.node, operation.index);
+      for (int index = 0; index < indices.length; index++)
+        indices[index] = parent.getIndex(nodes[index]);
+      sortByIndex(indices, nodes);
+    }
+    fireTreeNodesInserted(this, getPathToRoot(parent), indices, nodes);
+  }
+
+  private void removeChildren(MutableTaskNode parent, List<UndoLog.Operation> run) {
+    /* the event contains the indices before the removal */
+    final int[] indices = new int[run.size()];
+    final Object[] nodes = new Object[indices.length];
+    for (int index = 0; index < indices.length; index++) {
+      nodes[index] = run.get(index).node;
+      indices[index] = parent.getIndex(run.get(index).node);
+    }
+    sortByIndex(indices, nodes);
+    parent.remove(indices);
+    fireTreeNodesRemoved(this, getPathToRoot(parent), indices, nodes);
+  }
+
+  /** Exchanges the tasks of sibling nodes with the other versions of the operations. */
+  private void exchangeTasks(TreeNode parent, List<UndoLog.Operation> run) {
+    final int[] indices = new int[run.size()];
+    final Object[] nodes = new Object[indices.length];
+    for (int index = 0; index < indices.length; index++) {
+      final UndoLog.Operation operation = run.get(index);
+      final Task current = operation.node.getTask();
+      operation.node.setUserObject(operation.task);
+      operation.task = current;
+      operation.node.markChanged();
+      nodes[index] = operation.node;
+      if (parent != null)
+        indices[index] = parent.getIndex(operation.node);
+    }
+    if (parent == null) {
+      /* nodes without parent are roots, whose change is an event with the path of the root */
+      for (Object node : nodes)
+        fireTreeNodesChanged(this, getPathToRoot((TreeNode) node), null, null);
+    } else {
+      sortByIndex(indices, nodes);
+      fireTreeNodesChanged(this, getPathToRoot(parent), indices, nodes);
+    }
+  }
+
+  /** Sorts the indices of an event ascending together with their nodes. */
+  private static void sortByIndex(int[] indices, Object[] nodes) {
+    final long[] keys = new long[indices.length];
+    for (int index = 0; index < keys.length; index++)
+      keys[index] = ((long) indices[index] << 32) | index;
+    Arrays.sort(keys);
+    final Object[] unsorted = nodes.clone();
+    for (int index = 0; index < keys.length; index++) {
+      indices[index] = (int) (keys[index] >>> 32);
+      nodes[index] = unsorted[(int) keys[index]];
+    }
+  }
 }
@@ -0,0 +1,103 @@
+package business;
+
+import javax.swing.tree.TreeNode;
+import java.util.Arrays;
+
+/**
+ * Walks a tree in depth first order with an explicit stack instead of recursion, so the
+ * depth of a tree is only limited by the heap. Subclasses tell how the children of a node
+ * are accessed and are notified when a node is entered and left. The stack grows with the
+ * depth of the tree and is kept after a walk, so an instance may walk several times, but
+ * never concurrently. The tree must not be changed during a walk.
+ */
+public abstract class TreeTraversal<N> {
+  private static final int INITIAL_DEPTH = 32;
+
+  private Object[] nodes;
+  private int[] childCounts;
+  private int[] nextChildren;
+
+  /* Constructors */
+
+  protected TreeTraversal() {
+    nodes = new Object[INITIAL_DEPTH];
+    childCounts = new int[INITIAL_DEPTH];
+    nextChildren = new int[INITIAL_DEPTH];
+  }
+
+  /* Methods */
+
+  protected abstract int getChildCount(N node);
+
+  protected abstract N getChild(N node, int index);
+
+  /**
+   * Will be called for every node before its children are visited.
+   * @param node The visited node.
+   * @param depth Depth of the node, the start node of the walk has the depth 0.
+   * @return False, if the children of the node should be skipped.
+   */
+  protected abstract boolean enter(N node, int depth);
+
+  /**
+   * Will be called for every entered node after its children were visited or skipped. The
+   * default implementation does nothing.
+   */
+  protected void leave(N node, int depth) {
+  }
+
+  /**
+   * Walks the subtree of a node including the node itself.
+   */
+  @SuppressWarnings("unchecked")
+  public void traverse(N start) {
+    if (!enter(start, 0)) {
+      leave(start, 0);
+      return;
+    }
+
+    int depth = 0;
+    push(start, 0);
+    while (depth >= 0) {
+      final N node = (N) nodes[depth];
+      if (nextChildren[depth] < childCounts[depth]) {
+        final N child = getChild(node, nextChildren[depth]++);
+        if (enter(child, depth+1)) {
+          depth++;
+          push(child, depth);
+        } else leave(child, depth+1);
+      } else {
+        nodes[depth] = null;
+        leave(node, depth);
+        depth--;
+      }
+    }
+  }
+
+  private void push(N node, int depth) {
+    if (depth == nodes.length) {
+      nodes = Arrays.copyOf(nodes, 2 * depth);
+      childCounts = Arrays.copyOf(childCounts, 2 * depth);
+      nextChildren = Arrays.copyOf(nextChildren, 2 * depth);
+    }
+    nodes[depth] = node;
+    childCounts[depth] = getChildCount(node);
+    nextChildren[depth] = 0;
+  }
+
+  /* Inner classes */
+
+  /**
+   * Walks a tree of {@link TreeNode}s.
+   */
+  public abstract static class OfNodes<N extends TreeNode> extends TreeTraversal<N> {
+    protected int getChildCount(N node) {
+      return node.getChildCount();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected N getChild(N node, int index) {
+      return (N) node.getChildAt(index);
+    }
+  }
+}
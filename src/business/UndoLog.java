@@ -0,0 +1,191 @@
+package business;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Records the edits of a {@link TaskTreeTableModel}, so they can be undone and redone. An
+ * operation keeps only the changed node, its parent and index or the previous task. A
+ * removed subtree is kept as it was detached, so undoing a removal inserts the same nodes
+ * again. The operations between {@link #beginEdit()} and {@link #endEdit()} form one edit.
+ * <p/>
+ * The memory of the edits is estimated from the number of nodes they keep. If the estimate
+ * exceeds the budget, the oldest edits are forgotten.
+ */
+class UndoLog {
+  /** Estimated bytes of a node and its task that are kept by an operation */
+  static final long NODE_SIZE = 160L;
+  /** Estimated bytes of an operation without nodes */
+  static final long OPERATION_SIZE = 48L;
+
+  enum Kind {INSERT, REMOVE, CHANGE}
+
+  private final Deque<Edit> undoEdits;
+  private final Deque<Edit> redoEdits;
+  private long budget;
+  private long size;
+  /* the edit that is recorded at the moment and the depth of nested begin calls */
+  private Edit currentEdit;
+  private int editDepth;
+
+  /* Constructors */
+
+  /**
+   * @param budget Estimated bytes the edits may keep.
+   */
+  UndoLog(long budget) {
+    undoEdits = new ArrayDeque<Edit>();
+    redoEdits = new ArrayDeque<Edit>();
+    this.budget = budget;
+    size = 0L;
+  }
+
+  /* Methods */
+
+  /** Starts an edit that contains all operations until the matching {@link #endEdit()}. */
+  void beginEdit() {
+    if (editDepth++ == 0)
+      currentEdit = new Edit();
+  }
+
+  void endEdit() {
+    if (editDepth == 0 || --editDepth > 0)
+      return;
+    final Edit edit = currentEdit;
+    currentEdit = null;
+    if (!edit.operations.isEmpty()) {
+      size = size + edit.size;
+      for (Edit redo : redoEdits)
+        size = size - redo.size;
+      redoEdits.clear();
+      undoEdits.push(edit);
+      trim();
+    }
+  }
+
+  /** Records that a node was inserted at an index of a parent. */
+  void recordInsert(MutableTaskNode parent, int index, MutableTaskNode child) {
+    record(new Operation(Kind.INSERT, parent, index, child, null));
+  }
+
+  /** Records that a node was removed from an index of a parent. */
+  void recordRemove(MutableTaskNode parent, int index, MutableTaskNode child) {
+    record(new Operation(Kind.REMOVE, parent, index, child, null));
+  }
+
+  /**
+   * Records that the task of a node will be changed.
+   * @param previous A copy of the task before the change.
+   */
+  void recordChange(MutableTaskNode node, Task previous) {
+    record(new Operation(Kind.CHANGE, null, -1, node, previous));
+  }
+
+  /** Records an operation that was or will be applied to the tree. */
+  void record(Operation operation) {
+    beginEdit();
+    currentEdit.operations.add(operation);
+    currentEdit.size = currentEdit.size + operation.size;
+    endEdit();
+  }
+
+  /** Forgets the oldest edits until the estimated size fits into the budget. */
+  private void trim() {
+    while (size > budget && !undoEdits.isEmpty())
+      size = size - undoEdits.removeLast().size;
+  }
+
+  /**
+   * Removes the last edit from the undo edits and adds it to the redo edits.
+   * @return The edit whose operations have to be undone in reverse order or null.
+   */
+  Edit popUndo() {
+    if (undoEdits.isEmpty() || editDepth > 0)
+      return null;
+    final Edit edit = undoEdits.pop();
+    redoEdits.push(edit);
+    return edit;
+  }
+
+  /**
+   * Removes the last undone edit from the redo edits and adds it to the undo edits.
+   * @return The edit whose operations have to be done again in their order or null.
+   */
+  Edit popRedo() {
+    if (redoEdits.isEmpty() || editDepth > 0)
+      return null;
+    final Edit edit = redoEdits.pop();
+    undoEdits.push(edit);
+    return edit;
+  }
+
+  boolean canUndo() {
+    return !undoEdits.isEmpty();
+  }
+
+  boolean canRedo() {
+    return !redoEdits.isEmpty();
+  }
+
+  /** Forgets all edits, e.g. because the tree was replaced. */
+  void clear() {
+    undoEdits.clear();
+    redoEdits.clear();
+    size = 0L;
+  }
+
+  /* Getter and Setter */
+
+  long getBudget() {
+    return budget;
+  }
+
+  void setBudget(long budget) {
+    this.budget = budget;
+    trim();
+  }
+
+  /** Returns the estimated bytes of all edits. */
+  long getSize() {
+    return size;
+  }
+
+  /* Inner classes */
+
+  static class Edit {
+    private final List<Operation> operations = new ArrayList<Operation>(1);
+    private long size;
+
+    List<Operation> getOperations() {
+      return operations;
+    }
+  }
+
+  /**
+   * An operation of an edit. The task of a change is exchanged with the task of the node
+   * whenever the operation is undone or redone, so it is always the other version.
+   */
+  static class Operation {
+    final Kind kind;
+    final MutableTaskNode parent;
+    final int index;
+    final MutableTaskNode node;
+    /* estimated bytes, the subtree of an insertion or removal is counted only once */
+    private final long size;
+    Task task;
+
+    Operation(Kind kind, MutableTaskNode parent, int index, MutableTaskNode node,
+              Task task) {
+      this.kind = kind;
+      this.parent = parent;
+      this.index = index;
+      this.node = node;
+      this.task = task;
+      if (kind == Kind.CHANGE)
+        size = OPERATION_SIZE + NODE_SIZE;
+      else size = OPERATION_SIZE + NODE_SIZE * (node.countAllSubNodes() + 1L);
+    }
+  }
+}
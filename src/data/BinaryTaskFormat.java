@@ -0,0 +1,491 @@
+package data;
+
+import business.ConverterException;
+import business.MutableTaskNode;
+import business.Task;
+import dto.TaskProperty.Attribution;
+import dto.TaskProperty.Priority;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads and writes task trees in the compact binary todo format. A file starts with the
+ * {@link #MAGIC} bytes and a version byte, followed by one record per task in depth first
+ * order, the string table, the record index and a fixed size footer:
+ * <pre>
+ * record:       byte flags, byte priority ordinal, byte attribution ordinal,
+ *               varint child count, varint descendant count, varint name index,
+ *               varint description index, zig-zag varint due date, varint id
+ * string table: int string count, per string the int position of the string,
+ *               per string varint byte length and UTF-8 bytes
+ * record index: per record the int position of the record
+ * footer:       long position of the string table, long position of the record index,
+ *               int number of tasks, int number of children of the root
+ * </pre>
+ * Names and descriptions are stored once in the string table in the order of their first
+ * occurrence. As every record knows the size of its subtree and the index knows where every
+ * record starts, the children of a task can be found without reading the rest of the file.
+ * That is used by {@link RecordTaskStore} to read the tasks on demand.
+ */
+class BinaryTaskFormat {
+  static final byte[] MAGIC = {'T', 'O', 'D', 'O'};
+  static final byte VERSION = 1;
+  static final Charset UTF_8 = Charset.forName("UTF-8"); //NON-NLS
+  static final int HEADER_SIZE = MAGIC.length + 1;
+  static final int FOOTER_SIZE = 24;
+
+  private static final int FLAG_PERMANENT = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final Priority[] PRIORITIES = Priority.values();
+  private static final Attribution[] ATTRIBUTIONS = Attribution.values();
+
+  /** Returns true, if the bytes start with the {@link #MAGIC} bytes. */
+  static boolean isBinary(byte[] header, int length) {
+    if (length < MAGIC.length)
+      return false;
+    for (int index = 0; index < MAGIC.length; index++) {
+      if (header[index] != MAGIC[index])
+        return false;
+    }
+    return true;
+  }
+
+  /* Reading */
+
+  /**
+   * Reads a task tree from a file. The file is read into the heap as a whole, but of files
+   * of the current version only the direct children of the root will be created. Every other
+   * task will be created when the children of its parent are accessed for the first time.
+   * The file is not mapped, because the tree would read from the mapping as long as it exists
+   * and another program might truncate the file meanwhile. A mapped file can also not be
+   * replaced on every platform, so the list could not be saved.
+   */
+  static MutableTaskNode read(File file) throws IOException, ConverterException {
+    final ByteBuffer buffer;
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+        throw new ConverterException("The task list is too big to be read!");
+      if (size < HEADER_SIZE + FOOTER_SIZE)
+        throw new ConverterException("The task list is truncated!");
+      buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) == -1)
+          throw new ConverterException("The task list is truncated!");
+      }
+      buffer.flip();
+    } finally {
+      channel.close();
+    }
+
+    return read(buffer);
+  }
+
+  /**
+   * Reads a task tree from the content of a file. The buffer will be kept by the tree to
+   * read the tasks on demand.
+   */
+  static MutableTaskNode read(ByteBuffer buffer) throws ConverterException {
+    if (buffer.limit() < HEADER_SIZE + FOOTER_SIZE)
+      throw new ConverterException("The task list is truncated!");
+
+    final byte version = buffer.get(MAGIC.length);
+    if (version != VERSION)
+      throw new ConverterException("Unknown version " + version + " of the task list!");
+    return new RecordTaskStore(buffer).getRoot();
+  }
+
+  /** Reads a string that is stored as varint byte length and UTF-8 bytes. */
+  static String readString(ByteBuffer buffer) {
+    final byte[] bytes = new byte[readVarInt(buffer)];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  static int readVarInt(ByteBuffer buffer) {
+    final long value = readVarLong(buffer);
+    if (value < 0 || value > Integer.MAX_VALUE)
+      throw new IllegalStateException("Value " + value + " is not an int!");
+    return (int) value;
+  }
+
+  static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IllegalStateException("Varint is longer than 64 bits!");
+  }
+
+  static long readZigZag(ByteBuffer buffer) {
+    final long value = readVarLong(buffer);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /* Writing */
+
+  /**
+   * Writes a task tree to a file. Subtrees that were read by a {@link RecordTaskStore} and
+   * were never accessed or never changed will be copied record by record from their store
+   * without creating tasks for them.
+   */
+  static void write(MutableTaskNode root, File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      write(root, channel);
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Writes a task tree to a channel that is positioned at the start of the file. The
+   * channel will not be closed.
+   */
+  static void write(MutableTaskNode root, WritableByteChannel channel) throws IOException {
+    final RecordWriter writer = new RecordWriter(new ChannelOutput(channel),
+        root.countAllSubNodes());
+    writer.output.writeBytes(MAGIC);
+    writer.output.writeByte(VERSION);
+    writer.writeTasks(root);
+    writer.writeTrailer(root.getChildCount());
+    writer.output.flush();
+  }
+
+  static long toZigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /** Returns the node, if the node is a node of a store whose subtree still equals the
+   * records of the store, i.e. it has not read its children yet or has not changed.
+   * Otherwise null will be returned. */
+  private static RecordTaskStore.RecordTaskNode getStored(MutableTaskNode node) {
+    if (node instanceof RecordTaskStore.RecordTaskNode) {
+      final RecordTaskStore.RecordTaskNode storedNode = (RecordTaskStore.RecordTaskNode) node;
+      if (storedNode.isStored())
+        return storedNode;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of descendants of every task in the order of the records. The
+   * descendants of nodes that still equal the records of their store are not visited, their
+   * slots stay 0.
+   */
+  private static int[] countDescendants(MutableTaskNode root, int taskCount) {
+    final int[] descendants = new int[taskCount];
+    final Deque<MutableTaskNode> path = new ArrayDeque<MutableTaskNode>();
+    final Deque<int[]> positions = new ArrayDeque<int[]>();
+    path.push(root);
+    positions.push(new int[]{0, -1});
+    int recordIndex = 0;
+
+    while (!path.isEmpty()) {
+      final int[] position = positions.peek();
+      final MutableTaskNode node = path.peek();
+      if (position[0] < node.getChildCount()) {
+        final MutableTaskNode child = (MutableTaskNode) node.getChildAt(position[0]++);
+        final RecordTaskStore.RecordTaskNode stored = getStored(child);
+        if (stored != null) {
+          descendants[recordIndex] = stored.countAllSubNodes();
+          recordIndex = recordIndex + descendants[recordIndex] + 1;
+        } else {
+          path.push(child);
+          positions.push(new int[]{0, recordIndex++});
+        }
+      } else {
+        path.pop();
+        positions.pop();
+        if (position[1] >= 0)
+          descendants[position[1]] = recordIndex - position[1] - 1;
+      }
+    }
+    return descendants;
+  }
+
+  /* Inner classes */
+
+  /**
+   * The fields of a record. Instances are reused to decode many records.
+   */
+  static class TaskRecord {
+    long id;
+    int flags;
+    int priority;
+    int attribution;
+    int childCount;
+    int descendantCount;
+    int nameIndex;
+    int descriptionIndex;
+    long dueDate;
+
+    /** Decodes the record at the current position of the buffer. */
+    void read(ByteBuffer buffer) {
+      flags = buffer.get();
+      priority = buffer.get();
+      attribution = buffer.get();
+      childCount = readVarInt(buffer);
+      descendantCount = readVarInt(buffer);
+      nameIndex = readVarInt(buffer);
+      descriptionIndex = readVarInt(buffer);
+      dueDate = readZigZag(buffer);
+      id = readVarLong(buffer);
+    }
+
+    void write(ChannelOutput output) throws IOException {
+      output.writeByte(flags);
+      output.writeByte(priority);
+      output.writeByte(attribution);
+      output.writeVarLong(childCount);
+      output.writeVarLong(descendantCount);
+      output.writeVarLong(nameIndex);
+      output.writeVarLong(descriptionIndex);
+      output.writeVarLong(toZigZag(dueDate));
+      output.writeVarLong(id);
+    }
+
+    Task toTask(String name, String description) {
+      return new Task(name, (flags & FLAG_PERMANENT) != 0, dueDate,
+          ATTRIBUTIONS[attribution], PRIORITIES[priority], description);
+    }
+  }
+
+  /**
+   * Writes the records of a tree and collects the strings and record positions for the
+   * trailer of the file.
+   */
+  static class RecordWriter {
+    private final ChannelOutput output;
+    private final TaskRecord record;
+    private final int[] recordPositions;
+    private final Map<String, Integer> stringIndices;
+    private final List<String> strings;
+    /* string indices of the stores unread subtrees are copied from */
+    private final Map<RecordTaskStore, int[]> storeStringIndices;
+    private int recordCount;
+
+    private RecordWriter(ChannelOutput output, int taskCount) {
+      this.output = output;
+      record = new TaskRecord();
+      recordPositions = new int[taskCount];
+      stringIndices = new HashMap<String, Integer>();
+      strings = new ArrayList<String>();
+      storeStringIndices = new IdentityHashMap<RecordTaskStore, int[]>();
+      recordCount = 0;
+    }
+
+    private void writeTasks(MutableTaskNode root) throws IOException {
+      final int[] descendants = countDescendants(root, recordPositions.length);
+      final Deque<MutableTaskNode> path = new ArrayDeque<MutableTaskNode>();
+      final Deque<int[]> nextChildren = new ArrayDeque<int[]>();
+      path.push(root);
+      nextChildren.push(new int[]{0});
+
+      while (!path.isEmpty()) {
+        final int[] nextChild = nextChildren.peek();
+        final MutableTaskNode node = path.peek();
+        if (nextChild[0] < node.getChildCount()) {
+          final MutableTaskNode child = (MutableTaskNode) node.getChildAt(nextChild[0]++);
+          final RecordTaskStore.RecordTaskNode stored = getStored(child);
+          writeTask(child, descendants[recordCount]);
+          if (stored != null) {
+            stored.getStore().copyDescendants(stored, this);
+          } else {
+            path.push(child);
+            nextChildren.push(new int[]{0});
+          }
+        } else {
+          path.pop();
+          nextChildren.pop();
+        }
+      }
+    }
+
+    private void writeTask(MutableTaskNode node, int descendantCount) throws IOException {
+      final Task task = node.getTask();
+      record.id = node.getID();
+      record.flags = task.isPermanent() ? FLAG_PERMANENT : 0;
+      record.priority = task.getPriority().ordinal();
+      record.attribution = task.getAttribution().ordinal();
+      record.childCount = node.getChildCount();
+      record.descendantCount = descendantCount;
+      record.nameIndex = getStringIndex(task.getName());
+      record.descriptionIndex = getStringIndex(task.getDescription());
+      record.dueDate = task.getDueDate();
+      writeRecord();
+    }
+
+    /**
+     * Writes a record that was read from a store. The string indices of the record have
+     * to be indices of the store.
+     */
+    void writeStoreRecord(RecordTaskStore store, TaskRecord storeRecord) throws IOException {
+      int[] indices = storeStringIndices.get(store);
+      if (indices == null) {
+        indices = new int[store.getStringCount()];
+        Arrays.fill(indices, -1);
+        storeStringIndices.put(store, indices);
+      }
+      record.id = storeRecord.id;
+      record.flags = storeRecord.flags;
+      record.priority = storeRecord.priority;
+      record.attribution = storeRecord.attribution;
+      record.childCount = storeRecord.childCount;
+      record.descendantCount = storeRecord.descendantCount;
+      record.nameIndex = getStringIndex(store, indices, storeRecord.nameIndex);
+      record.descriptionIndex = getStringIndex(store, indices, storeRecord.descriptionIndex);
+      record.dueDate = storeRecord.dueDate;
+      writeRecord();
+    }
+
+    private void writeRecord() throws IOException {
+      recordPositions[recordCount++] = output.intPosition();
+      record.write(output);
+    }
+
+    private int getStringIndex(RecordTaskStore store, int[] indices, int storeIndex) {
+      if (indices[storeIndex] < 0)
+        indices[storeIndex] = getStringIndex(store.getString(storeIndex));
+      return indices[storeIndex];
+    }
+
+    private int getStringIndex(String string) {
+      Integer index = stringIndices.get(string);
+      if (index == null) {
+        index = strings.size();
+        stringIndices.put(string, index);
+        strings.add(string);
+      }
+      return index;
+    }
+
+    private void writeTrailer(int rootChildCount) throws IOException {
+      if (recordCount != recordPositions.length)
+        throw new IOException("Wrote " + recordCount + " of " + recordPositions.length +
+            " tasks!");
+
+      final long stringTablePosition = output.position();
+      final byte[][] encoded = new byte[strings.size()][];
+      output.writeInt(encoded.length);
+      long stringPosition = stringTablePosition + 4 + 4L * encoded.length;
+      for (int index = 0; index < encoded.length; index++) {
+        encoded[index] = strings.get(index).getBytes(UTF_8);
+        output.writeInt(ChannelOutput.toInt(stringPosition));
+        stringPosition = stringPosition + ChannelOutput.getVarLongSize(encoded[index].length) +
+            encoded[index].length;
+      }
+      for (byte[] bytes : encoded) {
+        output.writeVarLong(bytes.length);
+        output.writeBytes(bytes);
+      }
+
+      final long recordIndexPosition = output.position();
+      for (int position : recordPositions)
+        output.writeInt(position);
+
+      output.writeLong(stringTablePosition);
+      output.writeLong(recordIndexPosition);
+      output.writeInt(recordCount);
+      output.writeInt(rootChildCount);
+    }
+  }
+
+  /**
+   * Buffers the written bytes and keeps track of the number of written bytes, which is the
+   * position in the file.
+   */
+  static class ChannelOutput {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long flushed;
+
+    ChannelOutput(WritableByteChannel channel) {
+      this.channel = channel;
+      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      flushed = 0;
+    }
+
+    static int getVarLongSize(long value) {
+      int size = 1;
+      while ((value & ~0x7FL) != 0) {
+        value >>>= 7;
+        size++;
+      }
+      return size;
+    }
+
+    static int toInt(long position) throws IOException {
+      if (position > Integer.MAX_VALUE)
+        throw new IOException("The task list is too big to be written!");
+      return (int) position;
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+      if (buffer.remaining() < bytes)
+        flush();
+    }
+
+    long position() {
+      return flushed + buffer.position();
+    }
+
+    int intPosition() throws IOException {
+      return toInt(position());
+    }
+
+    void writeByte(int value) throws IOException {
+      ensureRemaining(1);
+      buffer.put((byte) value);
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+      int offset = 0;
+      while (offset < bytes.length) {
+        ensureRemaining(1);
+        final int length = Math.min(buffer.remaining(), bytes.length - offset);
+        buffer.put(bytes, offset, length);
+        offset = offset + length;
+      }
+    }
+
+    void writeVarLong(long value) throws IOException {
+      ensureRemaining(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer.put((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      buffer.put((byte) value);
+    }
+
+    void writeInt(int value) throws IOException {
+      ensureRemaining(4);
+      buffer.putInt(value);
+    }
+
+    void writeLong(long value) throws IOException {
+      ensureRemaining(8);
+      buffer.putLong(value);
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining())
+        flushed = flushed + channel.write(buffer);
+      buffer.clear();
+    }
+  }
+}
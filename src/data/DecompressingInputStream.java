@@ -0,0 +1,143 @@
+package data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the decompressed content of a file. The file is read and decompressed by a thread
+ * of its own, which hands the decompressed bytes over in chunks. So the decompression of the
+ * next chunks runs while the reader parses the current one. The thread stops after the
+ * stream was closed.
+ */
+class DecompressingInputStream extends InputStream {
+  private static final int CHUNK_SIZE = 1 << 16;
+  private static final int QUEUED_CHUNKS = 16;
+  private static final long OFFER_TIMEOUT = 100L;
+  private static final byte[] END = new byte[0];
+
+  private final BlockingQueue<byte[]> chunks;
+  private volatile boolean closed;
+  private volatile IOException failure;
+  private byte[] chunk;
+  private int offset;
+
+  DecompressingInputStream(final File file, final TodoFileIO.Compression compression) {
+    chunks = new ArrayBlockingQueue<byte[]>(QUEUED_CHUNKS);
+    closed = false;
+    chunk = null;
+    offset = 0;
+
+    final Thread thread = new Thread(new Runnable() {
+      public void run() {
+        decompress(file, compression);
+      }
+    }, "Decompressor " + file.getName()); //NON-NLS
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void decompress(File file, TodoFileIO.Compression compression) {
+    try {
+      final InputStream fileStream = new FileInputStream(file);
+      InputStream stream = null;
+      try {
+        /* a corrupt header lets the constructor of the decompressing stream fail */
+        stream = compression.createInputStream(fileStream);
+      } finally {
+        if (stream == null)
+          fileStream.close();
+      }
+      try {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int length = 0;
+        int read = 0;
+        while (read != -1 && !closed) {
+          read = stream.read(buffer, length, buffer.length - length);
+          if (read > 0) length = length + read;
+          if (length == buffer.length || (read == -1 && length > 0)) {
+            hand(length == buffer.length ? buffer : copy(buffer, length));
+            buffer = new byte[CHUNK_SIZE];
+            length = 0;
+          }
+        }
+      } finally {
+        stream.close();
+      }
+    } catch (IOException e) {
+      failure = e;
+    } catch (InterruptedException e) {
+      failure = new IOException("The decompression was interrupted!", e);
+    } finally {
+      try {
+        hand(END);
+      } catch (InterruptedException ignored) {
+      }
+    }
+  }
+
+  /** Waits until the chunk was queued or the stream was closed. */
+  private void hand(byte[] bytes) throws InterruptedException {
+    while (!closed && !chunks.offer(bytes, OFFER_TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+
+  private static byte[] copy(byte[] bytes, int length) {
+    final byte[] copy = new byte[length];
+    System.arraycopy(bytes, 0, copy, 0, length);
+    return copy;
+  }
+
+  /** Returns false, if the end of the content was reached. */
+  private boolean nextChunk() throws IOException {
+    if (chunk == END)
+      return false;
+
+    if (chunk == null || offset == chunk.length) {
+      try {
+        chunk = chunks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Reading was interrupted!", e);
+      }
+      offset = 0;
+      if (chunk == END) {
+        if (failure != null)
+          throw new IOException("Could not decompress the file: " + failure.getMessage(),
+              failure);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int read() throws IOException {
+    if (!nextChunk())
+      return -1;
+    return chunk[offset++] & 0xFF;
+  }
+
+  public int read(byte[] bytes, int off, int len) throws IOException {
+    if (len == 0)
+      return 0;
+    if (!nextChunk())
+      return -1;
+
+    final int length = Math.min(len, chunk.length - offset);
+    System.arraycopy(chunk, offset, bytes, off, length);
+    offset = offset + length;
+    return length;
+  }
+
+  public int available() {
+    return chunk == null || chunk == END ? 0 : chunk.length - offset;
+  }
+
+  public void close() {
+    closed = true;
+    chunks.clear();
+  }
+}
@@ -0,0 +1,624 @@
+package data;
+
+import business.ConverterException;
+import business.MutableTaskNode;
+import business.Task;
+import dto.TaskProperty.Attribution;
+import dto.TaskProperty.Priority;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeNode;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only journal of the edits of a todo file. The journal is a sidecar file next to the
+ * todo file, the base, and is attached to the tree model as listener, so that every insert,
+ * removal and change of a task is appended as a record as soon as it happened. Saving only
+ * appends a commit record and forces the journal to the disk, i.e. the cost of a save
+ * depends on the edits and not on the size of the list. Opening a file replays the journal
+ * on top of the base. When the journal grew too big, a background thread folds the
+ * committed records into a new base.
+ * <pre>
+ * header: 4 bytes {@link #MAGIC}, byte version, long size and long modification time of
+ *         the base the records apply to
+ * record: int body length, body, int CRC32 of the body
+ * body:   byte type, for an insert the index path of the parent, int index and the subtree
+ *         in depth first order with the long id before and the int child count after each
+ *         task, for a removal the index path of the parent and int index, for a change the
+ *         index path of the parent, int index and the task, nothing for a commit
+ * </pre>
+ * Moving a task is recorded as removal and insert. An inserted subtree whose tasks were not
+ * all read from the base is not recorded, because that would read them on the thread that
+ * edits the tree, the next save writes the base completely instead. Reading stops at the
+ * first record that is truncated or does not match its checksum, so a crash loses at most
+ * the record that was written last. A record that can not be applied to the base makes the
+ * opening fail and the journal is kept as it is.
+ */
+public class EditJournal implements TreeModelListener {
+  private static final Logger LOGGER = LoggingUtility.getLogger(EditJournal.class.getName());
+
+  private static final byte[] MAGIC = {'T', 'D', 'O', 'J'};
+  private static final byte VERSION = 1;
+  private static final int HEADER_SIZE = MAGIC.length + 1 + 16;
+  private static final int FRAME_SIZE = 8;
+  private static final String SUFFIX_JOURNAL = ".journal"; //NON-NLS
+  private static final String SUFFIX_TEMP = ".tmp"; //NON-NLS
+  private static final long MIN_COMPACTION_SIZE = 256 * 1024;
+  private static final int COMPACTION_RATIO = 4;
+
+  private static final byte TYPE_INSERT = 1;
+  private static final byte TYPE_REMOVE = 2;
+  private static final byte TYPE_CHANGE = 3;
+  private static final byte TYPE_COMMIT = 4;
+
+  private static final Priority[] PRIORITIES = Priority.values();
+  private static final Attribution[] ATTRIBUTIONS = Attribution.values();
+
+  private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(
+      new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          final Thread thread = new Thread(runnable, "Journal Compactor"); //NON-NLS
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final File baseFile;
+  private final File journalFile;
+  private FileChannel channel;
+  private long committedSize;
+  private boolean recovered;
+  private boolean valid;
+  private Future<?> compaction;
+
+  private EditJournal(File baseFile, FileChannel channel, long committedSize) {
+    this.baseFile = baseFile;
+    this.journalFile = getJournalFile(baseFile);
+    this.channel = channel;
+    this.committedSize = committedSize;
+    recovered = false;
+    valid = true;
+  }
+
+  /* Methods */
+
+  /**
+   * Creates an empty journal for a base file that was just written completely. An existing
+   * journal of the file will be replaced.
+   * @param baseFile The todo file.
+   * @return The journal that records the edits of the tree of the base file.
+   * @throws IOException The journal could not be written.
+   */
+  public static EditJournal create(File baseFile) throws IOException {
+    final File journalFile = getJournalFile(baseFile);
+    Files.deleteIfExists(getTempFile(journalFile).toPath());
+    final FileChannel channel = FileChannel.open(journalFile.toPath(),
+        StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      writeHeader(channel, baseFile);
+      channel.force(true);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return new EditJournal(baseFile, channel, HEADER_SIZE);
+  }
+
+  /**
+   * Opens the journal of a base file and replays its records on the tree that was read from
+   * the base file. A journal that belongs to another version of the base file will be
+   * replaced by an empty one. Records that were not committed will be replayed as well,
+   * {@link #isRecovered()} tells if there were any. A damaged end of the journal will be
+   * removed.
+   * @param baseFile The todo file.
+   * @param root Root of the tree that was read from the base file.
+   * @return The journal that records further edits of the tree.
+   * @throws IOException The journal could not be read or written or a record can not be
+   * applied to the tree. In the last case the journal file stays unchanged.
+   */
+  public static EditJournal open(File baseFile, MutableTaskNode root) throws IOException {
+    final File journalFile = getJournalFile(baseFile);
+    final File tempFile = getTempFile(journalFile);
+
+    /* a compaction replaced the base but not the journal */
+    if (!matchesBase(journalFile, baseFile) && matchesBase(tempFile, baseFile))
+      replace(tempFile.toPath(), journalFile.toPath());
+    Files.deleteIfExists(tempFile.toPath());
+    if (!matchesBase(journalFile, baseFile))
+      return create(baseFile);
+
+    final ByteBuffer records = readFile(journalFile);
+    final Replay replay = new Replay(records, HEADER_SIZE, records.limit());
+    replay.apply(root);
+
+    final FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+    try {
+      if (replay.position < records.limit()) {
+        LOGGER.warning("Discarding the damaged end of the journal " + journalFile +
+            " at " + replay.position);
+        channel.truncate(replay.position);
+      }
+      channel.position(replay.position);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    final EditJournal journal = new EditJournal(baseFile, channel, replay.committed);
+    journal.recovered = replay.committed < replay.position;
+    return journal;
+  }
+
+  /**
+   * Makes all recorded edits durable. A compaction will be started in the background if
+   * the journal became too big compared to the base file.
+   * @throws IOException The journal could not be written.
+   */
+  public synchronized void commit() throws IOException {
+    if (!valid)
+      throw new IOException("The journal of " + baseFile + " is not valid anymore!");
+    append(new byte[]{TYPE_COMMIT});
+    channel.force(false);
+    committedSize = channel.position();
+    recovered = false;
+
+    final long limit = Math.max(MIN_COMPACTION_SIZE, baseFile.length() / COMPACTION_RATIO);
+    if (committedSize > limit && (compaction == null || compaction.isDone())) {
+      final long end = committedSize;
+      compaction = COMPACTOR.submit(new Runnable() {
+        public void run() {
+          compact(end);
+        }
+      });
+    }
+  }
+
+  /**
+   * Forces all recorded edits to the disk without committing them. They will be replayed by
+   * {@link #open} as recovered edits, unless the journal is closed with discarding.
+   * @throws IOException The journal could not be written.
+   */
+  public synchronized void flush() throws IOException {
+    if (!valid)
+      throw new IOException("The journal of " + baseFile + " is not valid anymore!");
+    channel.force(false);
+  }
+
+  /**
+   * Closes the journal after a running compaction finished.
+   * @param discard If true, all records after the last commit will be removed.
+   */
+  public void close(boolean discard) {
+    waitForCompaction();
+    synchronized (this) {
+      try {
+        if (discard && channel.isOpen() && channel.size() > committedSize)
+          channel.truncate(committedSize);
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.severe("Could not close the journal " + journalFile + ": " + e.getMessage());
+      }
+      valid = false;
+    }
+  }
+
+  private void waitForCompaction() {
+    final Future<?> running;
+    synchronized (this) {
+      running = compaction;
+    }
+    if (running == null)
+      return;
+
+    try {
+      running.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOGGER.severe("The compaction of " + journalFile + " failed: " + e.getCause());
+    }
+  }
+
+  /**
+   * Writes a new base from the current base and the records up to a position, which is the
+   * end of a commit. The remaining records are moved to a new journal for the new base. The
+   * new journal is written completely before the base will be replaced, so that
+   * {@link #open} finds it if the journal could not be replaced anymore.
+   */
+  private void compact(long end) {
+    final File baseTemp = getTempFile(baseFile);
+    final File journalTemp = getTempFile(journalFile);
+    try {
+      final MutableTaskNode root = TodoFileIO.readTaskTree(baseFile);
+      final ByteBuffer records = readFile(journalFile);
+      final Replay replay = new Replay(records, HEADER_SIZE, (int) end);
+      replay.apply(root);
+      if (replay.position != end)
+        throw new IOException("The journal " + journalFile + " can not be replayed!");
+
+      TodoFileIO.write(root, baseTemp, TodoFileIO.getFormat(baseFile),
+          TodoFileIO.getCompression(baseFile), Deflater.DEFAULT_COMPRESSION);
+
+      synchronized (this) {
+        if (!valid)
+          return;
+        final FileChannel tempChannel = FileChannel.open(journalTemp.toPath(),
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+          writeHeader(tempChannel, baseTemp);
+          channel.force(false);
+          final long tail = channel.position() - end;
+          final FileChannel source = FileChannel.open(journalFile.toPath(),
+              StandardOpenOption.READ);
+          try {
+            tempChannel.transferFrom(source.position(end), HEADER_SIZE, tail);
+          } finally {
+            source.close();
+          }
+          tempChannel.force(true);
+        } finally {
+          tempChannel.close();
+        }
+
+        replace(baseTemp.toPath(), baseFile.toPath());
+        replace(journalTemp.toPath(), journalFile.toPath());
+        final long size = HEADER_SIZE + channel.position() - end;
+        committedSize = HEADER_SIZE + committedSize - end;
+        channel.close();
+        channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+        channel.position(size);
+      }
+      LOGGER.info("Compacted the journal of " + baseFile);
+    } catch (IOException e) {
+      LOGGER.severe("Could not compact the journal " + journalFile + ": " + e.getMessage());
+    } catch (ConverterException e) {
+      LOGGER.severe("Could not compact the journal " + journalFile + ": " + e.getMessage());
+    } finally {
+      try {
+        Files.deleteIfExists(baseTemp.toPath());
+        Files.deleteIfExists(journalTemp.toPath());
+      } catch (IOException e) {
+        LOGGER.warning("Could not delete the temporary files of " + baseFile);
+      }
+    }
+  }
+
+  /* Recording */
+
+  public void treeNodesChanged(TreeModelEvent e) {
+    final int[] indices = e.getChildIndices();
+    if (indices == null)
+      return; /* the root will not be saved */
+
+    final Object[] children = e.getChildren();
+    for (int index = 0; index < indices.length; index++)
+      record(TYPE_CHANGE, e.getPath(), indices[index], (MutableTaskNode) children[index]);
+  }
+
+  public void treeNodesInserted(TreeModelEvent e) {
+    final int[] indices = e.getChildIndices();
+    final Object[] children = e.getChildren();
+    for (int index = 0; index < indices.length; index++)
+      record(TYPE_INSERT, e.getPath(), indices[index], (MutableTaskNode) children[index]);
+  }
+
+  /** The removals are recorded from the highest to the lowest index. */
+  public void treeNodesRemoved(TreeModelEvent e) {
+    final int[] indices = e.getChildIndices().clone();
+    Arrays.sort(indices);
+    for (int index = indices.length-1; index >= 0; index--)
+      record(TYPE_REMOVE, e.getPath(), indices[index], null);
+  }
+
+  /** The change can not be recorded, so the next save has to write the base completely. */
+  public synchronized void treeStructureChanged(TreeModelEvent e) {
+    valid = false;
+  }
+
+  private synchronized void record(byte type, Object[] parentPath, int index,
+                                   MutableTaskNode node) {
+    if (!valid)
+      return;
+    if (type == TYPE_INSERT && !node.isSubtreeLoaded()) {
+      valid = false;
+      return;
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream output = new DataOutputStream(bytes);
+    try {
+      output.writeByte(type);
+      writeIndexPath(output, parentPath);
+      output.writeInt(index);
+      if (type == TYPE_INSERT)
+        writeSubtree(output, node);
+      else if (type == TYPE_CHANGE)
+        writeTask(output, node.getTask());
+      append(bytes.toByteArray());
+    } catch (IOException e) {
+      LOGGER.severe("Could not write to the journal " + journalFile + ": " + e.getMessage());
+      valid = false;
+    }
+  }
+
+  /** Writes the record with a single write, so that it is either complete or damaged. */
+  private void append(byte[] body) throws IOException {
+    final CRC32 checksum = new CRC32();
+    checksum.update(body);
+    final ByteBuffer buffer = ByteBuffer.allocate(body.length + FRAME_SIZE);
+    buffer.putInt(body.length).put(body).putInt((int) checksum.getValue());
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  private static void writeIndexPath(DataOutput output, Object[] path) throws IOException {
+    output.writeInt(path.length-1);
+    for (int index = 1; index < path.length; index++)
+      output.writeInt(((TreeNode) path[index-1]).getIndex((TreeNode) path[index]));
+  }
+
+  private static void writeSubtree(DataOutput output, MutableTaskNode node)
+      throws IOException {
+    final Deque<MutableTaskNode> stack = new ArrayDeque<MutableTaskNode>();
+    stack.push(node);
+    while (!stack.isEmpty()) {
+      final MutableTaskNode current = stack.pop();
+      final int childCount = current.getChildCount();
+      output.writeLong(current.getID());
+      writeTask(output, current.getTask());
+      output.writeInt(childCount);
+      for (int index = childCount-1; index >= 0; index--)
+        stack.push((MutableTaskNode) current.getChildAt(index));
+    }
+  }
+
+  private static void writeTask(DataOutput output, Task task) throws IOException {
+    writeString(output, task.getName());
+    writeString(output, task.getDescription());
+    output.writeBoolean(task.isPermanent());
+    output.writeLong(task.getDueDate());
+    output.writeByte(task.getPriority().ordinal());
+    output.writeByte(task.getAttribution().ordinal());
+  }
+
+  private static void writeString(DataOutput output, String value) throws IOException {
+    final byte[] bytes = value.getBytes(BinaryTaskFormat.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  /* Files */
+
+  private static File getJournalFile(File baseFile) {
+    final File file = baseFile.getAbsoluteFile();
+    return new File(file.getParentFile(), file.getName() + SUFFIX_JOURNAL);
+  }
+
+  private static File getTempFile(File file) {
+    final File absolute = file.getAbsoluteFile();
+    return new File(absolute.getParentFile(), absolute.getName() + SUFFIX_TEMP);
+  }
+
+  /** Writes the header with the size and modification time of the base at the start. */
+  private static void writeHeader(FileChannel channel, File baseFile) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.put(MAGIC).put(VERSION).putLong(baseFile.length()).putLong(baseFile.lastModified());
+    header.flip();
+    while (header.hasRemaining())
+      channel.write(header, header.position());
+    channel.position(HEADER_SIZE);
+  }
+
+  private static boolean matchesBase(File journalFile, File baseFile) throws IOException {
+    if (!journalFile.isFile() || journalFile.length() < HEADER_SIZE)
+      return false;
+
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    final FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ);
+    try {
+      while (header.hasRemaining() && channel.read(header) != -1);
+    } finally {
+      channel.close();
+    }
+    header.flip();
+    for (byte magic : MAGIC) {
+      if (header.get() != magic)
+        return false;
+    }
+    return header.get() == VERSION && header.getLong() == baseFile.length()
+        && header.getLong() == baseFile.lastModified();
+  }
+
+  private static ByteBuffer readFile(File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+        throw new IOException("The journal " + file + " is too big to be read!");
+      final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) != -1);
+      buffer.flip();
+      return buffer;
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static void replace(Path source, Path destination) throws IOException {
+    try {
+      Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /* Getter and Setter */
+
+  /** Returns true, if records that were not committed were replayed by {@link #open}. */
+  public synchronized boolean isRecovered() {
+    return recovered;
+  }
+
+  /**
+   * Returns true, if all edits were recorded. Otherwise the base has to be written
+   * completely and a new journal has to be created.
+   */
+  public synchronized boolean isValid() {
+    return valid;
+  }
+
+  /**
+   * Returns true, if the base file is still the one that the journal belongs to. Otherwise
+   * the base file was replaced by another program.
+   */
+  public synchronized boolean matchesBase() throws IOException {
+    return matchesBase(journalFile, baseFile);
+  }
+
+  public File getBaseFile() {
+    return baseFile;
+  }
+
+  /* Inner classes */
+
+  /**
+   * Applies the records of a journal to a tree. The replay stops at the first record that
+   * is damaged, a record that can not be applied to the tree makes it fail.
+   */
+  private static class Replay {
+    private final ByteBuffer records;
+    private final int end;
+    /** End of the last applied record */
+    private int position;
+    /** End of the last applied commit */
+    private int committed;
+
+    private Replay(ByteBuffer records, int start, int end) {
+      this.records = records;
+      this.end = end;
+      position = start;
+      committed = start;
+    }
+
+    private void apply(MutableTaskNode root) throws IOException {
+      final CRC32 checksum = new CRC32();
+      while (end - position >= FRAME_SIZE) {
+        final int length = records.getInt(position);
+        if (length <= 0 || length > end - position - FRAME_SIZE)
+          return;
+
+        final byte[] body = new byte[length];
+        records.position(position + 4);
+        records.get(body);
+        checksum.reset();
+        checksum.update(body);
+        if ((int) checksum.getValue() != records.getInt())
+          return;
+
+        try {
+          if (apply(ByteBuffer.wrap(body), root))
+            committed = position + length + FRAME_SIZE;
+        } catch (RuntimeException e) {
+          throw new IOException("Could not apply the record of the journal at " + position +
+              ": " + e);
+        }
+        position = position + length + FRAME_SIZE;
+      }
+    }
+
+    /** Returns true, if the record is a commit. */
+    private boolean apply(ByteBuffer body, MutableTaskNode root) {
+      final byte type = body.get();
+      if (type == TYPE_COMMIT)
+        return true;
+
+      final MutableTaskNode parent = readParent(body, root);
+      final int index = body.getInt();
+      if (type == TYPE_INSERT) {
+        if (index < 0 || index > parent.getChildCount())
+          throw new IllegalStateException("Index " + index + " is out of range!");
+        parent.insert(readSubtree(body), index);
+      } else if (type == TYPE_REMOVE) {
+        parent.remove(index);
+      } else if (type == TYPE_CHANGE) {
+        final Task changed = readTask(body);
+        final MutableTaskNode node = (MutableTaskNode) parent.getChildAt(index);
+        final Task task = node.getTask();
+        task.setName(changed.getName());
+        task.setDescription(changed.getDescription());
+        task.setPermanent(changed.isPermanent());
+        task.setDueDate(changed.getDueDate());
+        task.setPriority(changed.getPriority());
+        task.setAttribution(changed.getAttribution());
+        node.markChanged();
+      } else throw new IllegalStateException("Unknown record type " + type);
+      return false;
+    }
+
+    private static MutableTaskNode readParent(ByteBuffer body, MutableTaskNode root) {
+      MutableTaskNode node = root;
+      for (int depth = body.getInt(); depth > 0; depth--)
+        node = (MutableTaskNode) node.getChildAt(body.getInt());
+      return node;
+    }
+
+    private static MutableTaskNode readSubtree(ByteBuffer body) {
+      final long id = body.getLong();
+      final MutableTaskNode subtree = new MutableTaskNode(readTask(body), id);
+      final Deque<MutableTaskNode> parents = new ArrayDeque<MutableTaskNode>();
+      final Deque<Integer> missing = new ArrayDeque<Integer>();
+      parents.push(subtree);
+      missing.push(body.getInt());
+      while (!parents.isEmpty()) {
+        if (missing.peek() == 0) {
+          parents.pop();
+          missing.pop();
+        } else {
+          missing.push(missing.pop() - 1);
+          final MutableTaskNode parent = parents.peek();
+          final long childID = body.getLong();
+          final MutableTaskNode child = new MutableTaskNode(readTask(body), childID);
+          parent.insert(child, parent.getChildCount());
+          parents.push(child);
+          missing.push(body.getInt());
+        }
+      }
+      return subtree;
+    }
+
+    private static Task readTask(ByteBuffer body) {
+      final String name = readString(body);
+      final String description = readString(body);
+      final boolean permanent = body.get() != 0;
+      final long dueDate = body.getLong();
+      final Priority priority = PRIORITIES[body.get()];
+      final Attribution attribution = ATTRIBUTIONS[body.get()];
+      return new Task(name, permanent, dueDate, attribution, priority, description);
+    }
+
+    private static String readString(ByteBuffer body) {
+      final byte[] bytes = new byte[body.getInt()];
+      body.get(bytes);
+      return new String(bytes, BinaryTaskFormat.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches a file for changes by other programs. The directory of the file is registered at
+ * a {@link WatchService} and a thread of its own waits for its events. Programs often write
+ * a file in several steps, so the listener will be notified once after no further event of
+ * the file arrived for a short period. The listener has to find out itself, if the file was
+ * changed by this program.
+ */
+public class FileWatcher {
+  private static final Logger LOGGER = LoggingUtility.getLogger(FileWatcher.class.getName());
+
+  /** Milliseconds without events of the file before the listener will be notified */
+  private static final long SETTLE_TIME = 200L;
+
+  /**
+   * Will be notified on the thread of the watcher.
+   */
+  public interface Listener {
+    void fileChanged(File file);
+  }
+
+  private final File file;
+  private final Listener listener;
+  private final WatchService service;
+
+  /* Constructors */
+
+  private FileWatcher(File file, Listener listener, WatchService service) {
+    this.file = file;
+    this.listener = listener;
+    this.service = service;
+  }
+
+  /* Methods */
+
+  /**
+   * Starts to watch a file. The file does not need to exist yet.
+   * @param file File to watch.
+   * @param listener Will be notified about changes of the file.
+   * @return The watcher, which has to be closed if the file is not needed anymore.
+   * @throws IOException The directory of the file can not be watched.
+   */
+  public static FileWatcher watch(File file, Listener listener) throws IOException {
+    final File absolute = file.getAbsoluteFile();
+    final Path directory = absolute.getParentFile().toPath();
+    final WatchService service = directory.getFileSystem().newWatchService();
+    try {
+      directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      service.close();
+      throw e;
+    }
+
+    final FileWatcher watcher = new FileWatcher(absolute, listener, service);
+    final Thread thread = new Thread(new Runnable() {
+      public void run() {
+        watcher.run();
+      }
+    }, "File Watcher " + absolute.getName()); //NON-NLS
+    thread.setDaemon(true);
+    thread.start();
+    return watcher;
+  }
+
+  private void run() {
+    try {
+      boolean changed = false;
+      while (true) {
+        final WatchKey key = changed
+            ? service.poll(SETTLE_TIME, TimeUnit.MILLISECONDS) : service.take();
+        if (key == null) {
+          changed = false;
+          listener.fileChanged(file);
+          continue;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW
+              || file.getName().equals(event.context().toString()))
+            changed = true;
+        }
+        if (!key.reset()) {
+          LOGGER.warning("The directory of " + file + " can not be watched anymore");
+          return;
+        }
+      }
+    } catch (InterruptedException ignored) {
+    } catch (ClosedWatchServiceException ignored) {
+    }
+  }
+
+  /**
+   * Stops watching the file. The listener will not be notified anymore.
+   */
+  public void close() {
+    try {
+      service.close();
+    } catch (IOException e) {
+      LOGGER.warning("Could not close the watcher of " + file + ": " + e.getMessage());
+    }
+  }
+
+  /* Getter and Setter */
+
+  public File getFile() {
+    return file;
+  }
+}
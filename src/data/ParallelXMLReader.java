@@ -0,0 +1,442 @@
+package data;
+
+import business.ConverterException;
+import business.MutableTaskNode;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+import static dto.DTOTaskConverter.NAME_PARENT_ID;
+import static dto.DTOTaskConverter.NAME_TASK;
+
+/**
+ * Reads big files of the XML format on all processors. The file is split at the start tags
+ * of top level tasks, i.e. tasks without a parent attribute. The sub tasks of a top level
+ * task always follow it before the next top level task, so every chunk can be read on its
+ * own by {@link TodoFileIO}, enclosed by the start tag of the root element of the file. The
+ * chunks are read on a fork join pool with positional reads of the file into pooled buffers
+ * and the top level tasks are appended to the root in the order of the file.
+ * <p/>
+ * The start tags are searched in the bytes of the file, so a split may also be found in a
+ * comment or a CDATA section. Then the chunk before the split ends within the comment or
+ * section and can not be parsed, so the file is read sequentially instead.
+ */
+class ParallelXMLReader {
+  private static final Logger LOGGER =
+      LoggingUtility.getLogger(ParallelXMLReader.class.getName());
+
+  /** Chunks below this size will not be split anymore */
+  private static final int MIN_CHUNK_SIZE = 1 << 22;
+  private static final int BUFFER_SIZE = 1 << 16;
+  /* start tags up to this length are found, even if they cross the end of a buffer */
+  private static final int MAX_TAG_LENGTH = 1 << 12;
+  private static final byte[] START_TAG = ("<" + NAME_TASK).getBytes(BinaryTaskFormat.UTF_8);
+  private static final byte[] PARENT_ATTRIBUTE = NAME_PARENT_ID.getBytes(BinaryTaskFormat.UTF_8);
+  private static final byte[] ROOT_START = ("<" + TodoFileIO.NAME_TODO_LIST).getBytes(
+      BinaryTaskFormat.UTF_8);
+  private static final byte[] ROOT_END = ("</" + TodoFileIO.NAME_TODO_LIST).getBytes(
+      BinaryTaskFormat.UTF_8);
+  private static final byte[] CHUNK_END = ("</" + TodoFileIO.NAME_TODO_LIST + ">").getBytes(
+      BinaryTaskFormat.UTF_8);
+
+  private static ForkJoinPool pool;
+
+  private static synchronized ForkJoinPool getPool() {
+    if (pool == null)
+      pool = new ForkJoinPool();
+    return pool;
+  }
+
+  /**
+   * Returns true, if the file is big enough to be read in parallel.
+   */
+  static boolean isWorthwhile(File file) {
+    return file.length() >= 2L * MIN_CHUNK_SIZE && Runtime.getRuntime().availableProcessors() > 1;
+  }
+
+  /**
+   * Reads an uncompressed file of the XML format.
+   * @return The root of the read tree or null, if the file can not be split or a chunk can
+   * not be parsed. Then it has to be read sequentially.
+   */
+  static MutableTaskNode read(File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      return read(channel);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static MutableTaskNode read(FileChannel channel) throws IOException {
+    final BufferPool buffers = new BufferPool();
+    final long size = channel.size();
+    final ByteBuffer buffer = buffers.acquire();
+    final long start;
+    final long end;
+    final byte[] chunkStart;
+    try {
+      /* the prolog, the start tag of the root and the first top level task */
+      readFully(channel, buffer, 0);
+      final int first = findTopLevelTask(buffer, 0, buffer.limit());
+      final int rootStart = indexOf(buffer, ROOT_START, 0, Math.max(first, 0));
+      final int rootEnd = rootStart < 0 ? -1 : findTagEnd(buffer, rootStart, first);
+      if (first < 0 || rootEnd < 0 || !isUTF8Prolog(buffer, first))
+        return null;
+      chunkStart = new byte[rootEnd + 1 - rootStart];
+      final ByteBuffer rootTag = buffer.duplicate();
+      rootTag.position(rootStart);
+      rootTag.get(chunkStart);
+      start = first;
+
+      /* the end tag of the root */
+      final long last = Math.max(0, size - buffer.capacity());
+      readFully(channel, buffer, last);
+      final int rootEndTag = lastIndexOf(buffer, ROOT_END);
+      if (rootEndTag < 0 || last + rootEndTag < start)
+        return null;
+      end = last + rootEndTag;
+    } finally {
+      buffers.release(buffer);
+    }
+
+    final List<MutableTaskNode> tasks;
+    try {
+      tasks = getPool().invoke(new ChunkTask(channel, buffers, chunkStart, start, end));
+    } catch (ChunkException e) {
+      if (e.getCause() instanceof ConverterException) {
+        LOGGER.info("Could not read the task list in parallel: " + e.getCause().getMessage());
+        return null;
+      }
+      throw (IOException) e.getCause();
+    }
+
+    final MutableTaskNode root = MutableTaskNode.getRootInstance();
+    for (MutableTaskNode task : tasks)
+      root.insert(task, root.getChildCount());
+    return root;
+  }
+
+  /**
+   * Reads the file from a position into a buffer until the buffer is full or the file ends.
+   * The buffer is flipped afterwards.
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    buffer.clear();
+    int read = 0;
+    while (buffer.hasRemaining() && read != -1)
+      read = channel.read(buffer, position + buffer.position());
+    buffer.flip();
+  }
+
+  /**
+   * The chunks are decoded as UTF-8, so the file must declare UTF-8. A file without a
+   * declaration is decoded with the default charset, see {@link TodoFileIO}.
+   */
+  private static boolean isUTF8Prolog(ByteBuffer buffer, int length) {
+    final byte[] prolog = new byte[length];
+    buffer.duplicate().get(prolog);
+    final String encoding = TodoFileIO.getDeclaredEncoding(prolog, length);
+    if (encoding == null)
+      return BinaryTaskFormat.UTF_8.equals(Charset.defaultCharset());
+    try {
+      return BinaryTaskFormat.UTF_8.equals(Charset.forName(encoding));
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the position of the first start tag of a task without a parent attribute that
+   * ends in the range or -1, if there is none. Markup can not occur in attribute values or
+   * text, as '&lt;' has to be escaped there.
+   */
+  static int findTopLevelTask(ByteBuffer buffer, int from, int to) {
+    int position = indexOf(buffer, START_TAG, from, to);
+    while (position >= 0) {
+      final int next = position + START_TAG.length;
+      if (next < to && isNameEnd(buffer.get(next))) {
+        final int tagEnd = findTagEnd(buffer, next, to);
+        if (tagEnd >= 0 && !hasParent(buffer, next, tagEnd))
+          return position;
+      }
+      position = indexOf(buffer, START_TAG, next, to);
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the position of the '&gt;' that ends the tag starting at a position or -1, if
+   * the tag does not end before the limit.
+   */
+  private static int findTagEnd(ByteBuffer buffer, int position, int to) {
+    byte quote = 0;
+    for (int index = position; index < to; index++) {
+      final byte current = buffer.get(index);
+      if (quote != 0) {
+        if (current == quote) quote = 0;
+      } else if (current == '"' || current == '\'') {
+        quote = current;
+      } else if (current == '>') {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns true, if the tag starting at a position has a parent attribute. */
+  private static boolean hasParent(ByteBuffer buffer, int position, int to) {
+    byte quote = 0;
+    for (int index = position; index < to; index++) {
+      final byte current = buffer.get(index);
+      if (quote != 0) {
+        if (current == quote) quote = 0;
+      } else if (current == '"' || current == '\'') {
+        quote = current;
+      } else if (current == '>') {
+        return false;
+      } else if (isNameEnd(buffer.get(index-1)) && matches(buffer, PARENT_ATTRIBUTE, index)) {
+        int end = index + PARENT_ATTRIBUTE.length;
+        while (end < to && isWhitespace(buffer.get(end))) end++;
+        if (end < to && buffer.get(end) == '=')
+          return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isNameEnd(byte value) {
+    return isWhitespace(value) || value == '/' || value == '>';
+  }
+
+  private static boolean isWhitespace(byte value) {
+    return value == ' ' || value == '\t' || value == '\n' || value == '\r';
+  }
+
+  private static boolean matches(ByteBuffer buffer, byte[] pattern, int position) {
+    if (position + pattern.length > buffer.limit())
+      return false;
+    for (int index = 0; index < pattern.length; index++) {
+      if (buffer.get(position + index) != pattern[index])
+        return false;
+    }
+    return true;
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+    final int last = to - pattern.length;
+    for (int position = from; position <= last; position++) {
+      if (buffer.get(position) == pattern[0] && matches(buffer, pattern, position))
+        return position;
+    }
+    return -1;
+  }
+
+  private static int lastIndexOf(ByteBuffer buffer, byte[] pattern) {
+    for (int position = buffer.limit() - pattern.length; position >= 0; position--) {
+      if (matches(buffer, pattern, position))
+        return position;
+    }
+    return -1;
+  }
+
+  /* Inner classes */
+
+  /**
+   * Reads a range of the file that starts with a top level task. Big ranges are split in
+   * two halves at the first top level task after the middle.
+   */
+  @SuppressWarnings("serial")
+  private static class ChunkTask extends RecursiveTask<List<MutableTaskNode>> {
+    private final FileChannel channel;
+    private final BufferPool buffers;
+    /* the start tag of the root element of the file */
+    private final byte[] chunkStart;
+    private final long start;
+    private final long end;
+
+    private ChunkTask(FileChannel channel, BufferPool buffers, byte[] chunkStart, long start,
+                      long end) {
+      this.channel = channel;
+      this.buffers = buffers;
+      this.chunkStart = chunkStart;
+      this.start = start;
+      this.end = end;
+    }
+
+    protected List<MutableTaskNode> compute() {
+      try {
+        if (end - start >= 2 * MIN_CHUNK_SIZE) {
+          final long middle = findSplit(start + (end - start) / 2);
+          if (middle > start) {
+            final ChunkTask second = new ChunkTask(channel, buffers, chunkStart, middle, end);
+            second.fork();
+            final List<MutableTaskNode> tasks =
+                new ChunkTask(channel, buffers, chunkStart, start, middle).compute();
+            tasks.addAll(second.join());
+            return tasks;
+          }
+        }
+        return readChunk();
+      } catch (IOException e) {
+        throw new ChunkException(e);
+      } catch (ConverterException e) {
+        throw new ChunkException(e);
+      }
+    }
+
+    /**
+     * Returns the position of the first top level task from a position on or -1, if there
+     * is none before the end of the range. The buffers overlap, so that a start tag is found
+     * even if it crosses the end of a buffer.
+     */
+    private long findSplit(long from) throws IOException {
+      final ByteBuffer buffer = buffers.acquire();
+      try {
+        for (long position = from; position < end;
+             position = position + buffer.capacity() - MAX_TAG_LENGTH) {
+          readFully(channel, buffer, position);
+          final int to = (int) Math.min(buffer.limit(), end - position);
+          final int found = findTopLevelTask(buffer, 0, to);
+          if (found >= 0)
+            return position + found;
+          if (to < buffer.capacity())
+            break;
+        }
+        return -1;
+      } finally {
+        buffers.release(buffer);
+      }
+    }
+
+    private List<MutableTaskNode> readChunk() throws IOException, ConverterException {
+      final ChannelInputStream chunk = new ChannelInputStream(channel, buffers, start, end);
+      final InputStream stream = new SequenceInputStream(new ByteArrayInputStream(chunkStart),
+          new SequenceInputStream(chunk, new ByteArrayInputStream(CHUNK_END)));
+      final MutableTaskNode chunkRoot;
+      try {
+        final XMLStreamReader reader = TodoFileIO.createInputFactory().createXMLStreamReader(
+            stream, TodoFileIO.ENCODING);
+        try {
+          chunkRoot = TodoFileIO.readTaskTree(reader);
+        } finally {
+          reader.close();
+        }
+      } catch (XMLStreamException e) {
+        throw new ConverterException("Could not parse the task list: " + e.getMessage());
+      } finally {
+        chunk.close();
+      }
+
+      final List<MutableTaskNode> tasks = new ArrayList<MutableTaskNode>(
+          chunkRoot.getChildCount());
+      for (int index = 0; index < chunkRoot.getChildCount(); index++)
+        tasks.add((MutableTaskNode) chunkRoot.getChildAt(index));
+      return tasks;
+    }
+  }
+
+  /** Carries the exception of a chunk out of the pool. */
+  @SuppressWarnings("serial")
+  private static class ChunkException extends RuntimeException {
+    private ChunkException(Throwable cause) {
+      super(cause);
+    }
+  }
+
+  /**
+   * Keeps the buffers of the chunks that were read, so that every thread of the fork join
+   * pool needs only one buffer, however many chunks it reads.
+   */
+  private static class BufferPool {
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private ByteBuffer acquire() {
+      final ByteBuffer buffer = buffers.poll();
+      return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void release(ByteBuffer buffer) {
+      buffers.offer(buffer);
+    }
+  }
+
+  /**
+   * Reads a range of a file with positional reads, so that many streams can read the same
+   * channel at once. The buffer is returned to the pool when the stream is closed.
+   */
+  private static class ChannelInputStream extends InputStream {
+    private final FileChannel channel;
+    private final BufferPool buffers;
+    private final long end;
+    private ByteBuffer buffer;
+    private long position;
+
+    private ChannelInputStream(FileChannel channel, BufferPool buffers, long start, long end) {
+      this.channel = channel;
+      this.buffers = buffers;
+      this.end = end;
+      buffer = buffers.acquire();
+      buffer.limit(0);
+      position = start;
+    }
+
+    /** Returns false, if the range was read completely. */
+    private boolean fill() throws IOException {
+      if (buffer == null)
+        throw new IOException("The stream is closed!");
+      if (buffer.hasRemaining())
+        return true;
+      if (position >= end)
+        return false;
+
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) == -1)
+          throw new EOFException("The file was truncated while it was read!");
+      }
+      buffer.flip();
+      position = position + buffer.limit();
+      return true;
+    }
+
+    public int read() throws IOException {
+      return fill() ? buffer.get() & 0xFF : -1;
+    }
+
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0)
+        return 0;
+      if (!fill())
+        return -1;
+      final int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+
+    public int available() {
+      return buffer != null ? buffer.remaining() : 0;
+    }
+
+    public void close() {
+      if (buffer != null) {
+        buffers.release(buffer);
+        buffer = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package data;
+
+import business.ConverterException;
+import business.MutableTaskNode;
+import business.Task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Gives random access to the tasks of a file of the binary todo format that was read or
+ * decompressed into the heap. The store creates only nodes for the tasks whose parents were
+ * accessed. The children of a node that was never expanded stay records in the buffer, so
+ * the heap holds the compact records of the whole file and objects only for the tasks that
+ * were visible once. The buffer is a copy of the file, so the file may be changed or
+ * replaced by anyone while the tree is in use.
+ * See {@link BinaryTaskFormat} for the layout of the file.
+ */
+class RecordTaskStore {
+  private static final Logger LOGGER =
+      LoggingUtility.getLogger(RecordTaskStore.class.getName());
+
+  private final ByteBuffer buffer;
+  private final int stringTablePosition;
+  private final int stringCount;
+  private final int recordIndexPosition;
+  private final int taskCount;
+  private final RecordTaskNode root;
+
+  /**
+   * @param content Content of a file.
+   */
+  RecordTaskStore(ByteBuffer content) throws ConverterException {
+    buffer = content.duplicate();
+    final int footer = buffer.limit() - BinaryTaskFormat.FOOTER_SIZE;
+    if (footer < BinaryTaskFormat.HEADER_SIZE)
+      throw new ConverterException("The task list is truncated!");
+
+    final long stringTable = buffer.getLong(footer);
+    final long recordIndex = buffer.getLong(footer + 8);
+    taskCount = buffer.getInt(footer + 16);
+    final int rootChildCount = buffer.getInt(footer + 20);
+    if (stringTable < BinaryTaskFormat.HEADER_SIZE || stringTable + 4 > recordIndex ||
+        taskCount < 0 || recordIndex + 4L * taskCount != footer ||
+        rootChildCount < 0 || rootChildCount > taskCount)
+      throw new ConverterException("The footer of the task list is corrupt!");
+
+    stringTablePosition = (int) stringTable;
+    recordIndexPosition = (int) recordIndex;
+    stringCount = buffer.getInt(stringTablePosition);
+    if (stringCount < 0 || stringTablePosition + 4L + 4L * stringCount > recordIndexPosition)
+      throw new ConverterException("The string table of the task list is corrupt!");
+
+    root = new RecordTaskNode(this, MutableTaskNode.getRootTask(), MutableTaskNode.ROOT_ID,
+        0, rootChildCount, taskCount);
+  }
+
+  RecordTaskNode getRoot() {
+    return root;
+  }
+
+  int getStringCount() {
+    return stringCount;
+  }
+
+  synchronized String getString(int index) {
+    if (index < 0 || index >= stringCount)
+      throw new IllegalStateException("String " + index + " does not exist!");
+    buffer.position(buffer.getInt(stringTablePosition + 4 + 4 * index));
+    return BinaryTaskFormat.readString(buffer);
+  }
+
+  private int getRecordPosition(int recordIndex) {
+    if (recordIndex < 0 || recordIndex >= taskCount)
+      throw new IllegalStateException("Task " + recordIndex + " does not exist!");
+    return buffer.getInt(recordIndexPosition + 4 * recordIndex);
+  }
+
+  /**
+   * Creates the children of a node. The record of a child is followed by the records of its
+   * descendants, so the next sibling is found by skipping them.
+   * @throws IllegalStateException A record of a child is corrupt.
+   */
+  private synchronized List<RecordTaskNode> readChildren(RecordTaskNode node) {
+    final List<RecordTaskNode> children = new ArrayList<RecordTaskNode>(node.childCount);
+    final BinaryTaskFormat.TaskRecord record = new BinaryTaskFormat.TaskRecord();
+    try {
+      int recordIndex = node.firstChild;
+      for (int index = 0; index < node.childCount; index++) {
+        buffer.position(getRecordPosition(recordIndex));
+        record.read(buffer);
+        final Task task = record.toTask(getString(record.nameIndex),
+            getString(record.descriptionIndex));
+        children.add(new RecordTaskNode(this, task, record.id,
+            recordIndex + 1, record.childCount, record.descendantCount));
+        recordIndex = recordIndex + record.descendantCount + 1;
+      }
+    } catch (RuntimeException e) {
+      LOGGER.severe("Could not read the sub tasks of " + node.getTask().getName() + ": " + e);
+      throw new IllegalStateException("The task list is corrupt!", e);
+    }
+    return children;
+  }
+
+  /**
+   * Writes the records of all descendants of a node that did not read its children yet.
+   */
+  synchronized void copyDescendants(RecordTaskNode node,
+                                    BinaryTaskFormat.RecordWriter writer) throws IOException {
+    final BinaryTaskFormat.TaskRecord record = new BinaryTaskFormat.TaskRecord();
+    if (node.descendantCount > 0)
+      buffer.position(getRecordPosition(node.firstChild));
+    for (int count = 0; count < node.descendantCount; count++) {
+      record.read(buffer);
+      final int position = buffer.position();
+      writer.writeStoreRecord(this, record);
+      buffer.position(position);
+    }
+  }
+
+  /* Inner classes */
+
+  /**
+   * A node whose children are created from the records of the store when they are accessed
+   * for the first time. Until then the child count and the number of all sub nodes are
+   * answered from the record. As long as the node has not changed, its subtree equals the
+   * records of the store, whether its children were loaded or not.
+   */
+  static class RecordTaskNode extends MutableTaskNode {
+    private final RecordTaskStore store;
+    private final int firstChild;
+    private final int childCount;
+    private final int descendantCount;
+    private boolean loaded;
+
+    private RecordTaskNode(RecordTaskStore store, Task task, long id, int firstChild,
+                           int childCount, int descendantCount) {
+      super(task, id);
+      this.store = store;
+      this.firstChild = firstChild;
+      this.childCount = childCount;
+      this.descendantCount = descendantCount;
+      loaded = childCount == 0;
+      setKnownSubNodeCount(descendantCount);
+    }
+
+    /**
+     * The children are inserted only, if all of them could be read. Otherwise the exception
+     * is thrown to the caller and the node stays unloaded.
+     */
+    protected void loadChildren() {
+      if (!loaded) {
+        final List<RecordTaskNode> children = store.readChildren(this);
+        loaded = true;
+        for (RecordTaskNode child : children)
+          addLoadedChild(child);
+      }
+    }
+
+    protected void discardUnloadedChildren() {
+      loaded = true;
+    }
+
+    public int getChildCount() {
+      return loaded ? super.getChildCount() : childCount;
+    }
+
+    protected boolean isLoaded() {
+      return loaded;
+    }
+
+    /** Returns true, if the subtree of this node still equals the records of the store. */
+    boolean isStored() {
+      return !loaded || !hasChanged();
+    }
+
+    /** An unchanged node is copied as node that loads its children from the store again. */
+    protected MutableTaskNode copyNode(Task taskCopy) {
+      if (isStored())
+        return new RecordTaskNode(store, taskCopy, getID(), firstChild, childCount,
+            descendantCount);
+      else return super.copyNode(taskCopy);
+    }
+
+    RecordTaskStore getStore() {
+      return store;
+    }
+  }
+}
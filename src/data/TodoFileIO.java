@@ -1,59 +1,607 @@
 package data;
 
-import com.thoughtworks.xstream.XStream;
-import dto.DTOTask;
-import dto.DTOTaskConverter;
+import business.ConverterException;
+import business.MutableTaskNode;
+import business.Task;
+import business.TaskStore;
 
+import javax.xml.stream.*;
 import java.io.*;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.*;
+
+import static dto.DTOTaskConverter.*;
 
 /**
  * User: Timm Herrmann
  * Date: 23.09.12
  * Time: 00:18
  */
-@SuppressWarnings("unchecked")
 public class TodoFileIO {
+  /** The on-disk formats of a todo file. */
+  public enum Format {XML, BINARY}
+
+  /**
+   * The compressions of a todo file. A file that is written gets the compression of its
+   * suffix, the compression of a file that is read will be detected by its first bytes.
+   */
+  public enum Compression {
+    NONE(""), GZIP(".gz"), DEFLATE(".deflate"); //NON-NLS
+
+    private final String suffix;
+
+    Compression(String suffix) {
+      this.suffix = suffix;
+    }
+
+    /** Returns the compression of the suffix of a file name. */
+    public static Compression forFile(File file) {
+      final String name = file.getName().toLowerCase();
+      for (Compression compression : values()) {
+        if (compression != NONE && name.endsWith(compression.suffix))
+          return compression;
+      }
+      return NONE;
+    }
+
+    InputStream createInputStream(InputStream stream) throws IOException {
+      switch (this) {
+        case GZIP: return new GZIPInputStream(stream, COMPRESSION_BUFFER_SIZE);
+        case DEFLATE: return new InflaterInputStream(stream, new Inflater(),
+            COMPRESSION_BUFFER_SIZE);
+        default: return stream;
+      }
+    }
+
+    /**
+     * Creates a stream that compresses with a level of {@link java.util.zip.Deflater}.
+     * The stream has to be closed to release the compressor.
+     */
+    DeflaterOutputStream createOutputStream(OutputStream stream, int level)
+        throws IOException {
+      switch (this) {
+        case GZIP: return new LevelGZIPOutputStream(stream, level);
+        case DEFLATE: return new LevelDeflaterOutputStream(stream, level);
+        default: throw new IllegalStateException("The file is not compressed!");
+      }
+    }
+
+    public String getSuffix() {
+      return suffix;
+    }
+  }
+
+  static final String ENCODING = "UTF-8"; //NON-NLS
+  static final String NAME_TODO_LIST = "todo-list"; //NON-NLS
+  static final String NAME_VERSION = "version"; //NON-NLS
+  /** Version of lists whose task ids are the ids of the nodes */
+  static final String XML_VERSION = "2"; //NON-NLS
+  private static final String INDENT = "\n  "; //NON-NLS
+  private static final String INDENT_DESCRIPTION = "\n    "; //NON-NLS
+  private static final String SUFFIX_TEMP = ".tmp"; //NON-NLS
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+  private static final int COMPRESSION_BUFFER_SIZE = 1 << 16;
+  private static final int GZIP_MAGIC = 0x1F8B;
+  private static final int DEFLATE_METHOD = 8;
+  /** Bytes at the start of a file that contain the XML declaration, if there is one */
+  private static final int PROLOG_SIZE = 256;
+  private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+  private static final Pattern DECLARED_ENCODING = Pattern.compile(
+      "^<\\?xml[^>]*?\\sencoding\\s*=\\s*[\"']([^\"']+)[\"']"); //NON-NLS
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
 
-  private static XStream getXStream() {
-    final XStream xStream = new XStream();
-    xStream.alias("todo-list", List.class);
-    xStream.alias("task", DTOTask.class);
-    xStream.registerConverter(new DTOTaskConverter());
-    return xStream;
+  /** The factories are not thread safe, so every thread that reads in parallel needs one. */
+  static XMLInputFactory createInputFactory() {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
   }
 
   /**
-   * Reads a list of tasks from a file.
+   * Determines the format of a todo file by its first bytes. A compressed file is examined
+   * after its first bytes were decompressed.
+   * @param file File to examine.
+   * @return {@link Format#BINARY} if the file starts with the magic bytes of the binary
+   * format, otherwise {@link Format#XML}.
+   * @throws IOException The file could not be opened or read.
+   */
+  public static Format getFormat(File file) throws IOException {
+    final byte[] header = new byte[BinaryTaskFormat.MAGIC.length];
+    final Compression compression = getCompression(file);
+    InputStream stream = new FileInputStream(file);
+    try {
+      stream = compression.createInputStream(stream);
+      final int length = readHeader(stream, header);
+      return BinaryTaskFormat.isBinary(header, length) ? Format.BINARY : Format.XML;
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Determines the compression of a todo file by its first bytes. Neither the XML nor the
+   * binary format can start like a compressed file.
+   * @param file File to examine.
+   * @return {@link Compression#GZIP} for the magic number of gzip,
+   * {@link Compression#DEFLATE} for a valid zlib header, otherwise {@link Compression#NONE}.
+   * @throws IOException The file could not be opened or read.
+   */
+  public static Compression getCompression(File file) throws IOException {
+    final byte[] header = new byte[2];
+    final InputStream stream = new FileInputStream(file);
+    try {
+      if (readHeader(stream, header) < header.length)
+        return Compression.NONE;
+    } finally {
+      stream.close();
+    }
+
+    final int magic = (header[0] & 0xFF) << 8 | header[1] & 0xFF;
+    if (magic == GZIP_MAGIC)
+      return Compression.GZIP;
+    else if ((header[0] & 0x0F) == DEFLATE_METHOD && magic % 31 == 0)
+      return Compression.DEFLATE;
+    else return Compression.NONE;
+  }
+
+  /** Reads the first bytes of a stream and returns how many bytes were read. */
+  private static int readHeader(InputStream stream, byte[] header) throws IOException {
+    int length = 0;
+    int read = 0;
+    while (length < header.length && read != -1) {
+      read = stream.read(header, length, header.length - length);
+      if (read > 0) length = length + read;
+    }
+    return length;
+  }
+
+  /**
+   * Reads a task tree from a file in a single pass. The format and the compression of the
+   * file will be detected by {@link #getFormat(java.io.File)} and
+   * {@link #getCompression(java.io.File)}. Every task will be attached to its parent
+   * as soon as it was read, so that no intermediate list of tasks is created. A compressed
+   * file is decompressed by another thread while it is read. A big uncompressed file of the
+   * XML format is split at its top level tasks and read in parallel.
+   * The file has to contain the tasks in the order written by {@link #writeTaskTree}, i.e.
+   * a parent task is always located before its sub tasks.
    * @param file Source file to read from.
-   * @return Returns a list of DTOTask objects.
-   * @throws IOException {@link java.io.FileReader#FileReader(java.lang.String)} and
-   * {@link java.io.BufferedReader#close()}
+   * @return The root node of the read tree.
+   * @throws IOException The file could not be opened or read.
+   * @throws ConverterException The file is not a well formed todo list or a task refers to
+   *                            a parent that was not read before.
    */
-  public static List<DTOTask> readTodoFile(File file)
-      throws IOException {
-    final XStream xStream = getXStream();
+  public static MutableTaskNode readTaskTree(File file)
+      throws IOException, ConverterException {
+    final Compression compression = getCompression(file);
+    if (compression != Compression.NONE)
+      return readCompressed(file, compression);
+    else if (getFormat(file) == Format.BINARY)
+      return BinaryTaskFormat.read(file);
 
-    final BufferedReader reader = new BufferedReader(new FileReader(file));
-    final List<DTOTask> list = (List<DTOTask>) xStream.fromXML(reader);
-    reader.close();
+    if (ParallelXMLReader.isWorthwhile(file)) {
+      final MutableTaskNode root = ParallelXMLReader.read(file);
+      if (root != null)
+        return root;
+    }
+    return readXML(new FileInputStream(file));
+  }
+
+  private static MutableTaskNode readCompressed(File file, Compression compression)
+      throws IOException, ConverterException {
+    final byte[] header = new byte[BinaryTaskFormat.MAGIC.length];
+    final PushbackInputStream stream = new PushbackInputStream(
+        new DecompressingInputStream(file, compression), header.length);
+    try {
+      final int length = readHeader(stream, header);
+      stream.unread(header, 0, length);
+      if (BinaryTaskFormat.isBinary(header, length))
+        return BinaryTaskFormat.read(ByteBuffer.wrap(readAll(stream)));
+      else return readXML(stream);
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static byte[] readAll(InputStream stream) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(COMPRESSION_BUFFER_SIZE);
+    final byte[] buffer = new byte[COMPRESSION_BUFFER_SIZE];
+    int read;
+    while ((read = stream.read(buffer)) != -1)
+      bytes.write(buffer, 0, read);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the encoding that the XML declaration at the start of a file declares or null,
+   * if there is no declaration with an encoding. A byte order mark declares UTF-8.
+   * @param prolog The first bytes of the file.
+   * @param length Number of valid bytes of the prolog.
+   */
+  static String getDeclaredEncoding(byte[] prolog, int length) {
+    if (length >= UTF_8_BOM.length && prolog[0] == UTF_8_BOM[0] && prolog[1] == UTF_8_BOM[1]
+        && prolog[2] == UTF_8_BOM[2])
+      return ENCODING;
+    /* the declaration only consists of ASCII characters */
+    final Matcher matcher = DECLARED_ENCODING.matcher(
+        new String(prolog, 0, length, Charset.forName("ISO-8859-1"))); //NON-NLS
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  /**
+   * Reads the XML format from a stream and closes the stream afterwards. Lists without an
+   * encoding declaration were written by a {@link java.io.FileWriter} of an older version, so
+   * they are decoded with the default charset of the platform.
+   */
+  private static MutableTaskNode readXML(InputStream input)
+      throws IOException, ConverterException {
+    final BufferedInputStream stream = new BufferedInputStream(input);
+    try {
+      final byte[] prolog = new byte[PROLOG_SIZE];
+      stream.mark(PROLOG_SIZE);
+      final int length = readHeader(stream, prolog);
+      stream.reset();
 
-    return list;
+      final XMLStreamReader reader;
+      if (getDeclaredEncoding(prolog, length) != null)
+        reader = INPUT_FACTORY.createXMLStreamReader(stream);
+      else reader = INPUT_FACTORY.createXMLStreamReader(
+          new InputStreamReader(stream, Charset.defaultCharset()));
+      try {
+        return readTaskTree(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new ConverterException("Could not parse the task list: " + e.getMessage());
+    } finally {
+      stream.close();
+    }
   }
 
   /**
-   * Writes a list of tasks to a file. A file will be overwritten if the path already exists.
-   *
-   * @param tasks Tasks to write to a file.
+   * Reads the tasks of a todo list. The root element tells by its version attribute, if the
+   * ids of the tasks are the numeric ids of the nodes. Otherwise the ids are only used to
+   * find the parents and the nodes get new ids. The tasks are kept in a {@link TaskStore},
+   * which creates the nodes on demand.
+   */
+  static MutableTaskNode readTaskTree(XMLStreamReader reader)
+      throws XMLStreamException, ConverterException {
+    final TaskStore store = new TaskStore();
+    final ReadPath path = new ReadPath();
+    boolean rootRead = false;
+    boolean nodeIDs = false;
+
+    while (reader.hasNext()) {
+      if (reader.next() != XMLStreamConstants.START_ELEMENT)
+        continue;
+      if (!NAME_TASK.equals(reader.getLocalName())) {
+        if (!rootRead)
+          nodeIDs = XML_VERSION.equals(reader.getAttributeValue(null, NAME_VERSION));
+        rootRead = true;
+        continue;
+      }
+
+      final String id = toID(reader.getAttributeValue(null, NAME_ID));
+      final String parentID = toID(reader.getAttributeValue(null, NAME_PARENT_ID));
+      final long nodeID = nodeIDs && id != null ? parseID(id) : MutableTaskNode.createID();
+
+      /* the parent is the root or one of the tasks on the current path */
+      final int depth;
+      if (parentID == null) depth = 0;
+      else if (nodeIDs) depth = path.find(parseID(parentID));
+      else depth = path.find(parentID);
+      if (parentID != null && depth == 0)
+        throw new ConverterException("Parent " + parentID + " of task " + id +
+            " is not located before the task!");
+
+      final int index = store.add(depth == 0 ? TaskStore.ROOT : path.indices[depth-1], nodeID,
+          toText(reader.getAttributeValue(null, NAME_NAME)),
+          Boolean.parseBoolean(reader.getAttributeValue(null, NAME_PERMANENT)),
+          toDueDate(reader.getAttributeValue(null, NAME_DUE_DATE)),
+          toAttribution(reader.getAttributeValue(null, NAME_ATTRIBUTION)),
+          toPriority(reader.getAttributeValue(null, NAME_PRIORITY)), "");
+      path.set(depth, index, nodeID, id);
+
+      readDescription(reader, store, index);
+    }
+    return store.getRoot();
+  }
+
+  private static long parseID(String id) throws ConverterException {
+    try {
+      return Long.parseLong(id);
+    } catch (NumberFormatException e) {
+      throw new ConverterException("The task id " + id + " is not a number!");
+    }
+  }
+
+  /** Reads the optional description element of the task element the reader points at. */
+  private static void readDescription(XMLStreamReader reader, TaskStore store, int index)
+      throws XMLStreamException {
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (NAME_DESCRIPTION.equals(reader.getLocalName()))
+        store.setDescription(index, reader.getElementText());
+      else skipElement(reader);
+    }
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      final int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) depth++;
+      else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+    }
+  }
+
+  /**
+   * Writes a task tree to a file without creating intermediate objects for the tasks. The
+   * tree will be walked depth first, so that a parent is always written before its sub
+   * tasks. The tree is written and synced to a temporary file first which atomically
+   * replaces the destination file afterwards, so a crash leaves either the old or the new
+   * file. The tree may still read tasks from the content of the destination file that was
+   * read before, which is kept in memory.
+   * @param root Root of the tree to write. The root itself will not be written.
+   * @param file Destination file.
+   * @param format {@link Format#XML} writes the XML format with the ids of the nodes.
+   *               {@link Format#BINARY} writes the compact binary format.
+   * @throws IOException The file could not be opened or written.
+   * @see #writeTaskTree(business.MutableTaskNode, java.io.File, Format, Compression, int)
+   */
+  public static void writeTaskTree(MutableTaskNode root, File file, Format format)
+      throws IOException {
+    writeTaskTree(root, file, format, Compression.forFile(file),
+        Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Writes a task tree to a compressed file like
+   * {@link #writeTaskTree(business.MutableTaskNode, java.io.File, Format)}. The tree is
+   * compressed while it is written.
+   * @param root Root of the tree to write. The root itself will not be written.
    * @param file Destination file.
-   * @throws IOException {@link java.io.FileWriter#FileWriter(java.lang.String)} and
-   * {@link java.io.BufferedWriter#close()}
+   * @param format Format of the uncompressed content.
+   * @param compression Compression of the file.
+   * @param level Compression level of {@link java.util.zip.Deflater}.
+   * @throws IOException The file could not be opened or written.
+   */
+  public static void writeTaskTree(MutableTaskNode root, File file, Format format,
+                                   Compression compression, int level) throws IOException {
+    final Path path = file.getAbsoluteFile().toPath();
+    final Path tempFile = Files.createTempFile(path.getParent(), file.getName(), SUFFIX_TEMP);
+    try {
+      copyPermissions(path, tempFile);
+      write(root, tempFile.toFile(), format, compression, level);
+      replace(tempFile, path);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Gives a new file the permissions of the file it will replace, because a temporary file
+   * is only accessible by its owner.
+   */
+  private static void copyPermissions(Path source, Path destination) throws IOException {
+    if (Files.exists(source)
+        && source.getFileSystem().supportedFileAttributeViews().contains("posix")) //NON-NLS
+      Files.setPosixFilePermissions(destination, Files.getPosixFilePermissions(source));
+  }
+
+  /** Writes and syncs a file without a temporary file. */
+  static void write(MutableTaskNode root, File file, Format format, Compression compression,
+                    int level) throws IOException {
+    if (compression == Compression.NONE) {
+      if (format == Format.BINARY)
+        BinaryTaskFormat.write(root, file);
+      else writeXML(root, file);
+      return;
+    }
+
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      /* writes the header of the compression already */
+      final DeflaterOutputStream stream = compression.createOutputStream(
+          Channels.newOutputStream(channel), level);
+      try {
+        if (format == Format.BINARY) {
+          BinaryTaskFormat.write(root, Channels.newChannel(stream));
+        } else {
+          final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, ENCODING),
+              WRITE_BUFFER_SIZE);
+          writeXML(root, writer);
+          writer.flush();
+        }
+        stream.finish();
+        channel.force(true);
+      } finally {
+        stream.close();
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static void replace(Path source, Path destination) throws IOException {
+    try {
+      Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void writeXML(MutableTaskNode root, File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    final Writer writer = new BufferedWriter(Channels.newWriter(channel, ENCODING),
+        WRITE_BUFFER_SIZE);
+    try {
+      writeXML(root, writer);
+      writer.flush();
+      channel.force(true);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** Writes the XML format to a writer without flushing or closing it. */
+  private static void writeXML(MutableTaskNode root, Writer writer) throws IOException {
+    try {
+      final XMLStreamWriter xmlWriter = OUTPUT_FACTORY.createXMLStreamWriter(writer);
+      /* without the declaration the list would be read with the default charset */
+      xmlWriter.writeStartDocument(ENCODING, "1.0"); //NON-NLS
+      xmlWriter.writeCharacters("\n");
+      xmlWriter.writeStartElement(NAME_TODO_LIST);
+      xmlWriter.writeAttribute(NAME_VERSION, XML_VERSION);
+      writeTasks(xmlWriter, root);
+      xmlWriter.writeCharacters("\n");
+      xmlWriter.writeEndElement();
+      xmlWriter.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not write the task list: " + e.getMessage(), e);
+    }
+  }
+
+  private static void writeTasks(XMLStreamWriter writer, MutableTaskNode root)
+      throws XMLStreamException {
+    final Deque<WriteFrame> path = new ArrayDeque<WriteFrame>();
+    path.push(new WriteFrame(root));
+
+    while (!path.isEmpty()) {
+      final WriteFrame frame = path.peek();
+      if (frame.nextChild < frame.node.getChildCount()) {
+        final MutableTaskNode child = (MutableTaskNode) frame.node.getChildAt(frame.nextChild++);
+        writeTask(writer, child, frame.node == root ? null : frame.node);
+        path.push(new WriteFrame(child));
+      } else path.pop();
+    }
+  }
+
+  private static void writeTask(XMLStreamWriter writer, MutableTaskNode node,
+                                MutableTaskNode parent) throws XMLStreamException {
+    final Task task = node.getTask();
+    final String description = task.getDescription();
+    final boolean hasDescription = !description.isEmpty();
+
+    writer.writeCharacters(INDENT);
+    if (hasDescription) writer.writeStartElement(NAME_TASK);
+    else writer.writeEmptyElement(NAME_TASK);
+    writer.writeAttribute(NAME_ID, Long.toString(node.getID()));
+    if (parent != null)
+      writer.writeAttribute(NAME_PARENT_ID, Long.toString(parent.getID()));
+    writer.writeAttribute(NAME_NAME, task.getName());
+    writer.writeAttribute(NAME_PERMANENT, task.isPermanent().toString());
+    writer.writeAttribute(NAME_DUE_DATE, task.getDueDate().toString());
+    writer.writeAttribute(NAME_PRIORITY, task.getPriority().name());
+    writer.writeAttribute(NAME_ATTRIBUTION, task.getAttribution().name());
+    if (hasDescription) {
+      writer.writeCharacters(INDENT_DESCRIPTION);
+      writer.writeStartElement(NAME_DESCRIPTION);
+      writer.writeCharacters(description);
+      writer.writeEndElement();
+      writer.writeCharacters(INDENT);
+      writer.writeEndElement();
+    }
+  }
+
+  /* Inner classes */
+
+  /** A gzip stream with a selectable compression level. */
+  private static class LevelGZIPOutputStream extends GZIPOutputStream {
+    private LevelGZIPOutputStream(OutputStream stream, int level) throws IOException {
+      super(stream, COMPRESSION_BUFFER_SIZE);
+      def.setLevel(level);
+    }
+  }
+
+  /** A zlib stream with a selectable compression level that releases its compressor. */
+  private static class LevelDeflaterOutputStream extends DeflaterOutputStream {
+    private LevelDeflaterOutputStream(OutputStream stream, int level) {
+      super(stream, new Deflater(level), COMPRESSION_BUFFER_SIZE);
+    }
+
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        def.end();
+      }
+    }
+  }
+
+  /** A node on the path of the depth first walk and the index of its next child to write. */
+  private static class WriteFrame {
+    private final MutableTaskNode node;
+    private int nextChild;
+
+    private WriteFrame(MutableTaskNode node) {
+      this.node = node;
+      nextChild = 0;
+    }
+  }
+
+  /**
+   * The ids and store indices of the path from the root to the last read task. The root
+   * itself is not part of the path.
    */
-  public static void writeTodoFile(List<DTOTask> tasks, File file) throws IOException {
-    final XStream xStream = getXStream();
+  private static class ReadPath {
+    private static final int INITIAL_LENGTH = 16;
+
+    private long[] ids;
+    private String[] textIDs;
+    private int[] indices;
+    private int length;
+
+    private ReadPath() {
+      ids = new long[INITIAL_LENGTH];
+      textIDs = new String[INITIAL_LENGTH];
+      indices = new int[INITIAL_LENGTH];
+      length = 0;
+    }
+
+    /** Returns the length of the path up to the node with the id or 0, if there is none. */
+    private int find(long id) {
+      int depth = length;
+      while (depth > 0 && ids[depth-1] != id) depth--;
+      return depth;
+    }
+
+    /** Returns the length of the path up to the task with the id as written in the file. */
+    private int find(String textID) {
+      int depth = length;
+      while (depth > 0 && !textID.equals(textIDs[depth-1])) depth--;
+      return depth;
+    }
 
-    final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-    xStream.toXML(tasks, writer);
-    writer.close();
+    /** Cuts the path after a depth and appends a task. */
+    private void set(int depth, int index, long id, String textID) {
+      if (depth == indices.length) {
+        ids = Arrays.copyOf(ids, 2 * depth);
+        textIDs = Arrays.copyOf(textIDs, 2 * depth);
+        indices = Arrays.copyOf(indices, 2 * depth);
+      }
+      ids[depth] = id;
+      textIDs[depth] = textID;
+      indices[depth] = index;
+      length = depth + 1;
+    }
   }
 }
@@ -1,10 +1,5 @@
 package dto;
 
-import com.thoughtworks.xstream.converters.Converter;
-import com.thoughtworks.xstream.converters.MarshallingContext;
-import com.thoughtworks.xstream.converters.UnmarshallingContext;
-import com.thoughtworks.xstream.io.HierarchicalStreamReader;
-import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import data.LoggingUtility;
 
 import java.util.logging.Logger;
@@ -13,130 +8,70 @@ import java.util.logging.Logger;
  * User: Timm Herrmann
  * Date: 31.01.13
  * Time: 18:42
+ * <p/>
+ * Names of the elements and attributes of a task in the XML format and the interpretation
+ * of their values.
  */
-public class DTOTaskConverter implements Converter {
+public class DTOTaskConverter {
   private static final Logger LOGGER =
       LoggingUtility.getLogger(DTOTaskConverter.class.getName());
 
-  private static final String NAME_ID = "id";
-  private static final String NAME_PARENT_ID = "parent";
-  private static final String NAME_NAME = "name";
-  private static final String NAME_PERMANENT = "permanent";
-  private static final String NAME_DUE_DATE = "dueDate";
-  private static final String NAME_PRIORITY = "priority";
-  private static final String NAME_ATTRIBUTION = "attribution";
-  private static final String NAME_DESCRIPTION = "description";
-
-  private void addAttribute(HierarchicalStreamWriter writer, String name, Object value) {
-    if(value != null)
-      writer.addAttribute(name, value.toString());
-  }
-
-  public boolean canConvert(Class clazz) {
-    return DTOTask.class == clazz;
-  }
-
-  public void marshal(Object value, HierarchicalStreamWriter writer,
-                      MarshallingContext context) {
-    DTOTask task = (DTOTask) value;
-    addAttribute(writer, NAME_ID, task.id);
-    addAttribute(writer, NAME_PARENT_ID, task.parentID);
-    addAttribute(writer, NAME_NAME, task.name);
-    addAttribute(writer, NAME_PERMANENT, task.permanent);
-    addAttribute(writer, NAME_DUE_DATE, task.dueDate);
-    addAttribute(writer, NAME_PRIORITY, task.priority);
-    addAttribute(writer, NAME_ATTRIBUTION, task.attribution);
-    if(task.description != null && !task.description.isEmpty()) {
-      writer.startNode(NAME_DESCRIPTION);
-      writer.setValue(task.description);
-      writer.endNode();
-    }
+  public static final String NAME_TASK = "task";
+  public static final String NAME_ID = "id";
+  public static final String NAME_PARENT_ID = "parent";
+  public static final String NAME_NAME = "name";
+  public static final String NAME_PERMANENT = "permanent";
+  public static final String NAME_DUE_DATE = "dueDate";
+  public static final String NAME_PRIORITY = "priority";
+  public static final String NAME_ATTRIBUTION = "attribution";
+  public static final String NAME_DESCRIPTION = "description";
+
+  private static String getNotInterpretMessage(String valueName, String value) {
+    return "Could not interpret "+valueName+". Set "+valueName+" to "+value;
   }
 
-  public Object unmarshal(HierarchicalStreamReader reader,
-                          UnmarshallingContext context) {
-    DTOTask task = new DTOTask();
-    String value = reader.getAttribute(NAME_ID);
-    setID(value, task);
-    value = reader.getAttribute(NAME_PARENT_ID);
-    setParentID(value, task);
-    value = reader.getAttribute(NAME_NAME);
-    setName(value, task);
-    value = reader.getAttribute(NAME_PERMANENT);
-    setPermanent(value, task);
-    value = reader.getAttribute(NAME_DUE_DATE);
-    setDueDate(value, task);
-    value = reader.getAttribute(NAME_PRIORITY);
-    setPriority(value, task);
-    value = reader.getAttribute(NAME_ATTRIBUTION);
-    setAttribution(value, task);
-    if(reader.hasMoreChildren()) {
-      reader.moveDown();
-      value = reader.getValue();
-      setDescription(value, task);
-      reader.moveUp();
-    }
-    return task;
-  }
+  /* Attribute interpretation of the readers of data.TodoFileIO */
 
-  private String getNotInterpretMessage(String valueName, String value) {
-    return "Could not interpret "+valueName+". Set "+valueName+" to "+value;
+  /** Returns an empty string for null, otherwise the value itself. */
+  public static String toText(String value) {
+    return value == null ? "" : value;
   }
 
-  private void setDescription(String value, DTOTask task) {
-    if (value == null)
-      task.description = "";
-    else task.description = value;
+  /** Returns null for null or empty values, otherwise the value itself. */
+  public static String toID(String value) {
+    return value == null || value.isEmpty() ? null : value;
   }
 
-  private void setAttribution(String value, DTOTask task) {
+  /** Returns the attribution of the value or {@link TaskProperty.Attribution#NOTHING}. */
+  public static TaskProperty.Attribution toAttribution(String value) {
     try {
-      task.attribution = TaskProperty.Attribution.valueOf(value);
-    } catch (IllegalArgumentException e) {
-      task.attribution = TaskProperty.Attribution.NOTHING;
-      LOGGER.warning(getNotInterpretMessage("attribution", task.attribution.toString()));
+      return TaskProperty.Attribution.valueOf(value);
+    } catch (RuntimeException e) {
+      LOGGER.warning(getNotInterpretMessage("attribution",
+          TaskProperty.Attribution.NOTHING.toString()));
+      return TaskProperty.Attribution.NOTHING;
     }
   }
 
-  private void setPriority(String value, DTOTask task) {
+  /** Returns the priority of the value or {@link TaskProperty.Priority#MEDIUM}. */
+  public static TaskProperty.Priority toPriority(String value) {
     try {
-      task.priority = TaskProperty.Priority.valueOf(value);
-    } catch (IllegalArgumentException e) {
-      task.priority = TaskProperty.Priority.MEDIUM;
-      LOGGER.warning(getNotInterpretMessage("priority", task.priority.toString()));
+      return TaskProperty.Priority.valueOf(value);
+    } catch (RuntimeException e) {
+      LOGGER.warning(getNotInterpretMessage("priority", TaskProperty.Priority.MEDIUM.toString()));
+      return TaskProperty.Priority.MEDIUM;
     }
   }
 
-  private void setDueDate(String value, DTOTask task) {
+  /** Returns the due date of the value or 0 if it could not be interpreted. */
+  public static Long toDueDate(String value) {
     try {
       if (value == null)
-        task.dueDate = 0L;
-      else task.dueDate = Long.parseLong(value);
+        return 0L;
+      else return Long.parseLong(value);
     } catch (NumberFormatException e) {
       LOGGER.warning(getNotInterpretMessage("due date", "0"));
-      task.dueDate = 0L;
+      return 0L;
     }
   }
-
-  private void setPermanent(String value, DTOTask task) {
-    task.permanent = Boolean.parseBoolean(value);
-  }
-
-  private void setName(String value, DTOTask task) {
-    if (value == null)
-      task.name = "";
-    else task.name = value;
-  }
-
-  private void setParentID(String value, DTOTask task) {
-    if (value == null || value.isEmpty())
-      task.parentID = null;
-    else task.parentID = value;
-  }
-
-  private void setID(String value, DTOTask task) {
-    if (value == null || value.isEmpty())
-      task.id = null;
-    else task.id = value;
-  }
 }
@@ -20,6 +20,10 @@ public interface TaskProperty {
     FREE_TIME(ResourceGetter.getImage(ResourceList.IMAGE_ATTRIBUTION_FREE_TIME)),
     WORK(ResourceGetter.getImage(ResourceList.IMAGE_ATTRIBUTION_WORK));
 
+    /* the keys of the descriptions in the order of the constants */
+    private static final String[] DESCRIPTION_KEYS = {"task.attribution.nothing",
+        "task.attribution.birthday", "task.attribution.free.time", "task.attribution.work"};
+
     private ImageIcon icon;
 
     Attribution(ImageIcon icon) {
@@ -27,17 +31,7 @@ public interface TaskProperty {
     }
 
     public String getDescription() {
-      final String description;
-      if(this.equals(BIRTHDAY))
-        description = I18nSupport.getValue(MISC, "task.attribution.birthday");
-      else if(this.equals(FREE_TIME))
-        description = I18nSupport.getValue(MISC, "task.attribution.free.time");
-      else if(this.equals(NOTHING))
-        description = I18nSupport.getValue(MISC, "task.attribution.nothing");
-      else if(this.equals(WORK))
-        description = I18nSupport.getValue(MISC, "task.attribution.work");
-      else description = "";
-      return description;
+      return I18nSupport.getValues(MISC, DESCRIPTION_KEYS)[ordinal()];
     }
 
     public ImageIcon getIcon(Integer height) {
@@ -52,6 +46,11 @@ public interface TaskProperty {
     HIGH(ResourceGetter.getImage(ResourceList.IMAGE_PRIORITY_HIGH)),
     HIGHEST(ResourceGetter.getImage(ResourceList.IMAGE_PRIORITY_HIGHEST));
 
+    /* the keys of the descriptions in the order of the constants */
+    private static final String[] DESCRIPTION_KEYS = {"task.priority.lowest",
+        "task.priority.low", "task.priority.medium", "task.priority.high",
+        "task.priority.highest"};
+
     private ImageIcon icon;
 
     Priority(ImageIcon icon) {
@@ -59,19 +58,7 @@ public interface TaskProperty {
     }
 
     public String getDescription() {
-      final String description;
-      if(this.equals(LOWEST))
-        description = I18nSupport.getValue(MISC, "task.priority.lowest");
-      else if(this.equals(LOW))
-        description = I18nSupport.getValue(MISC, "task.priority.low");
-      else if(this.equals(MEDIUM))
-        description = I18nSupport.getValue(MISC, "task.priority.medium");
-      else if(this.equals(HIGH))
-        description = I18nSupport.getValue(MISC, "task.priority.high");
-      else if(this.equals(HIGHEST))
-        description = I18nSupport.getValue(MISC, "task.priority.highest");
-      else description = "";
-      return description;
+      return I18nSupport.getValues(MISC, DESCRIPTION_KEYS)[ordinal()];
     }
 
     public ImageIcon getIcon(Integer height) {
@@ -14,25 +14,20 @@ import java.awt.*;
  */
 public class AttributionPriorityRenderer extends DefaultListCellRenderer {
   public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-    Component comp = super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-    final JLabel label = new JLabel();
+    super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+    /* the renderer itself is reused, its height without an icon is the height of the text */
     if(value instanceof TaskProperty.Attribution) {
       final TaskProperty.Attribution attribution = (TaskProperty.Attribution) value;
-      label.setText(attribution.getDescription());
-      label.setIcon(attribution.getIcon(this.getPreferredSize().height));
+      final int height = getPreferredSize().height;
+      setText(attribution.getDescription());
+      setIcon(attribution.getIcon(height));
     } else if(value instanceof TaskProperty.Priority) {
       final TaskProperty.Priority priority = (TaskProperty.Priority) value;
-      label.setText(priority.getDescription());
-      label.setIcon(priority.getIcon(this.getPreferredSize().height));
-    } else {
-      if(value != null)
-        label.setText(value.toString());
+      final int height = getPreferredSize().height;
+      setText(priority.getDescription());
+      setIcon(priority.getIcon(height));
     }
 
-    label.setOpaque(true);
-    label.setForeground(comp.getForeground());
-    label.setBackground(comp.getBackground());
-
-    return label;
+    return this;
   }
 }
@@ -0,0 +1,195 @@
+package gui;
+
+import data.LoggingUtility;
+
+import javax.swing.*;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.logging.Logger;
+
+/**
+ * Saves the edits of the list automatically. The saver listens to the tree model and
+ * coalesces a burst of edits into one save, which starts when no edit happened for the quiet
+ * period or at the latest when the maximum delay after the first unsaved edit passed. A new
+ * save will not be started before the last one finished, edits meanwhile are saved
+ * afterwards. The number of edits per save and the latencies of the saves are logged by
+ * {@link #logStatistics()}. All methods have to be called on the event dispatch thread.
+ */
+public class AutoSaver implements TreeModelListener, ActionListener {
+  private static final Logger LOGGER = LoggingUtility.getLogger(AutoSaver.class.getName());
+
+  /** Default milliseconds without edits before a save starts */
+  public static final int DEFAULT_QUIET_PERIOD = 2000;
+  /** Default maximum milliseconds between the first unsaved edit and the save */
+  public static final int DEFAULT_MAX_DELAY = 10000;
+  /* number of buckets of the latency histogram, the last bucket has no upper bound */
+  private static final int LATENCY_BUCKETS = 12;
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+  /**
+   * Performs the saves of an {@link AutoSaver}.
+   */
+  public interface Target {
+    /**
+     * Starts to save the list. {@link AutoSaver#saveFinished()} has to be called as soon as
+     * the list was written, which may happen before this method returns.
+     * @return False, if the list can not be saved now, e.g. because it has no file yet.
+     */
+    boolean autoSave();
+  }
+
+  private final Target target;
+  private final int quietPeriod;
+  private final int maxDelay;
+  private final Timer timer;
+
+  private int unsavedEdits;
+  private long firstEditTime;
+  private boolean saving;
+  private int savingEdits;
+  private long saveStartTime;
+
+  private int saveCount;
+  private long coalescedEdits;
+  private int maxCoalescedEdits;
+  private final int[] latencyHistogram;
+
+  /* Constructors */
+
+  /**
+   * @param target Performs the saves.
+   * @param quietPeriod Milliseconds without edits before a save starts.
+   * @param maxDelay Maximum milliseconds between the first unsaved edit and the save.
+   */
+  public AutoSaver(Target target, int quietPeriod, int maxDelay) {
+    this.target = target;
+    this.quietPeriod = Math.max(0, quietPeriod);
+    this.maxDelay = Math.max(this.quietPeriod, maxDelay);
+    timer = new Timer(this.quietPeriod, this);
+    timer.setRepeats(false);
+    unsavedEdits = 0;
+    saving = false;
+    latencyHistogram = new int[LATENCY_BUCKETS];
+  }
+
+  /* Methods */
+
+  public void treeNodesChanged(TreeModelEvent e) {
+    edited();
+  }
+
+  public void treeNodesInserted(TreeModelEvent e) {
+    edited();
+  }
+
+  public void treeNodesRemoved(TreeModelEvent e) {
+    edited();
+  }
+
+  public void treeStructureChanged(TreeModelEvent e) {
+    edited();
+  }
+
+  private void edited() {
+    if (unsavedEdits == 0)
+      firstEditTime = System.nanoTime();
+    unsavedEdits++;
+    if (!saving)
+      schedule();
+  }
+
+  /** Restarts the timer, so that it fires after the quiet period or the maximum delay. */
+  private void schedule() {
+    final long waited = (System.nanoTime() - firstEditTime) / NANOS_PER_MILLI;
+    final long delay = Math.max(0, Math.min(quietPeriod, maxDelay - waited));
+    timer.setInitialDelay((int) delay);
+    timer.restart();
+  }
+
+  public void actionPerformed(ActionEvent e) {
+    if (saving || unsavedEdits == 0)
+      return;
+
+    saving = true;
+    savingEdits = unsavedEdits;
+    saveStartTime = System.nanoTime();
+    unsavedEdits = 0;
+    if (target.autoSave()) {
+      saveCount++;
+      coalescedEdits = coalescedEdits + savingEdits;
+      maxCoalescedEdits = Math.max(maxCoalescedEdits, savingEdits);
+    } else {
+      /* the next edit tries again */
+      saving = false;
+      unsavedEdits = savingEdits;
+    }
+  }
+
+  /**
+   * Has to be called when a save that was started by {@link Target#autoSave()} finished,
+   * successfully or not. Edits that happened meanwhile will be scheduled.
+   */
+  public void saveFinished() {
+    if (!saving)
+      return;
+
+    saving = false;
+    final long latency = (System.nanoTime() - saveStartTime) / NANOS_PER_MILLI;
+    latencyHistogram[getLatencyBucket(latency)]++;
+    LOGGER.fine("Saved " + savingEdits + " edits automatically in " + latency + "ms");
+    if (unsavedEdits > 0)
+      schedule();
+  }
+
+  /**
+   * Forgets all unsaved edits, e.g. because the list was saved by the user or another list
+   * was opened.
+   */
+  public void reset() {
+    timer.stop();
+    unsavedEdits = 0;
+  }
+
+  /**
+   * Logs the number of saves, the edits that were coalesced per save and the histogram of
+   * the save latencies.
+   */
+  public void logStatistics() {
+    if (saveCount == 0)
+      return;
+
+    final StringBuilder histogram = new StringBuilder();
+    for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+      if (latencyHistogram[bucket] == 0)
+        continue;
+      if (histogram.length() > 0)
+        histogram.append(", ");
+      if (bucket < LATENCY_BUCKETS-1)
+        histogram.append('<').append(getLatencyBound(bucket)).append("ms: "); //NON-NLS
+      else histogram.append(">=").append(getLatencyBound(bucket-1)).append("ms: "); //NON-NLS
+      histogram.append(latencyHistogram[bucket]);
+    }
+    LOGGER.info("Saved automatically " + saveCount + " times, " +
+        String.format("%.1f", (double) coalescedEdits / saveCount) + //NON-NLS
+        " edits per save on average, at most " + maxCoalescedEdits + ", latencies " +
+        histogram);
+  }
+
+  /** Returns the index of the bucket of the histogram for a latency. */
+  private static int getLatencyBucket(long latency) {
+    int bucket = 0;
+    while (bucket < LATENCY_BUCKETS-1 && latency >= getLatencyBound(bucket))
+      bucket++;
+    return bucket;
+  }
+
+  /**
+   * Returns the exclusive upper bound in milliseconds of a bucket of the latency histogram.
+   * The bounds are powers of two, the last bucket is unbounded.
+   */
+  private static long getLatencyBound(int bucket) {
+    return bucket < LATENCY_BUCKETS-1 ? 1L << bucket : Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,235 @@
+package gui;
+
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the widths that the cells of the columns of a table need. The width of every row is
+ * stored, so the widest cell of a column is known without rendering all cells again. The
+ * events of the table model only mark the inserted or updated rows, which are measured by the
+ * next call of {@link #getWidth(int)}. Deleted rows are just forgotten.
+ * <p/>
+ * A cell is measured by the width of the same value or text that was measured before. The
+ * widths of enum values are kept in a table by their ordinal. A changed structure of the
+ * table, e.g. after a locale change, forgets all widths.
+ */
+class ColumnWidths {
+  /* space between the content of a cell and its border */
+  private static final int PADDING = 5;
+  /* bound of the cached widths of the values of a column that are not enum values */
+  private static final int MAX_VALUE_WIDTHS = 1024;
+
+  private final JTable table;
+  private Column[] columns;
+  private int rowCount;
+  /* the rows have to be measured again, e.g. because all rows of the table were changed */
+  private boolean rowsInvalid;
+
+  /* Constructors */
+
+  ColumnWidths(JTable table) {
+    this.table = table;
+    columns = new Column[0];
+    rowCount = table.getRowCount();
+  }
+
+  /* Methods */
+
+  /**
+   * Returns the biggest width that a cell of a column needs, including a small padding.
+   * Only the cells that were changed since the last call are rendered.
+   */
+  int getWidth(int column) {
+    if(rowsInvalid || rowCount != table.getRowCount()) {
+      rowCount = table.getRowCount();
+      rowsInvalid = false;
+      for (Column state : columns)
+        if(state != null)
+          state.reset(rowCount);
+    }
+    if(column >= columns.length)
+      columns = Arrays.copyOf(columns, Math.max(column+1, table.getColumnCount()));
+    if(columns[column] == null)
+      columns[column] = new Column(rowCount);
+
+    final Column state = columns[column];
+    state.measure(column);
+    return state.maxWidth;
+  }
+
+  /** Updates the rows of an event of the table model. */
+  void tableChanged(TableModelEvent e) {
+    final int firstRow = e.getFirstRow();
+    final int lastRow = e.getLastRow();
+    final int count = lastRow-firstRow+1;
+    if(firstRow == TableModelEvent.HEADER_ROW) {
+      columns = new Column[0];
+      rowsInvalid = true;
+    } else if(lastRow == Integer.MAX_VALUE || rowsInvalid) {
+      rowsInvalid = true;
+    } else if(e.getType() == TableModelEvent.INSERT) {
+      if(firstRow < 0 || firstRow > rowCount) {
+        rowsInvalid = true;
+        return;
+      }
+      for (Column state : columns)
+        if(state != null)
+          state.insert(firstRow, count);
+      rowCount = rowCount + count;
+    } else if(e.getType() == TableModelEvent.DELETE) {
+      if(firstRow < 0 || lastRow >= rowCount) {
+        rowsInvalid = true;
+        return;
+      }
+      for (Column state : columns)
+        if(state != null)
+          state.delete(firstRow, count);
+      rowCount = rowCount - count;
+    } else {
+      for (int index = 0; index < columns.length; index++)
+        if(columns[index] != null &&
+            (e.getColumn() == TableModelEvent.ALL_COLUMNS || e.getColumn() == index))
+          columns[index].update(Math.max(firstRow, 0), Math.min(lastRow+1, rowCount));
+    }
+  }
+
+  /** Forgets all widths, e.g. because the font or the icons of the cells were changed. */
+  void invalidateValues() {
+    columns = new Column[0];
+    rowsInvalid = true;
+  }
+
+  /* Inner classes */
+
+  /** The widths of the rows of a column. A width of 0 means that a row was not measured. */
+  private class Column {
+    private short[] rowWidths;
+    /* number of rows per width, so the biggest width is known after a row was removed */
+    private int[] widthCounts;
+    private int maxWidth;
+    /* the rows from dirtyFrom (inclusive) to dirtyTo (exclusive) may need to be measured */
+    private int dirtyFrom;
+    private int dirtyTo;
+    private int[] enumWidths;
+    private final Map<Object, Integer> valueWidths;
+
+    private Column(int rowCount) {
+      widthCounts = new int[64];
+      enumWidths = new int[0];
+      valueWidths = new HashMap<Object, Integer>();
+      reset(rowCount);
+    }
+
+    private void reset(int rowCount) {
+      rowWidths = new short[Math.max(rowCount, 16)];
+      Arrays.fill(widthCounts, 0);
+      maxWidth = 0;
+      dirtyFrom = 0;
+      dirtyTo = rowCount;
+    }
+
+    private void measure(int column) {
+      for (int row = dirtyFrom; row < dirtyTo; row++) {
+        if(rowWidths[row] == 0) {
+          final int width = Math.min(measureCell(row, column), Short.MAX_VALUE);
+          rowWidths[row] = (short) width;
+          addWidth(width);
+        }
+      }
+      dirtyFrom = 0;
+      dirtyTo = 0;
+    }
+
+    private int measureCell(int row, int column) {
+      final Object value = table.getValueAt(row, column);
+      if(value instanceof Enum) {
+        final int ordinal = ((Enum<?>) value).ordinal();
+        if(ordinal >= enumWidths.length)
+          enumWidths = Arrays.copyOf(enumWidths, ordinal+1);
+        if(enumWidths[ordinal] == 0)
+          enumWidths[ordinal] = renderCell(row, column, value).getPreferredSize().width+PADDING;
+        return enumWidths[ordinal];
+      }
+
+      /* labels with the same text have the same width */
+      final Component component = renderCell(row, column, value);
+      final Object key = component instanceof JLabel ? ((JLabel) component).getText() : value;
+      Integer width = valueWidths.get(key);
+      if(width == null) {
+        width = component.getPreferredSize().width+PADDING;
+        if(valueWidths.size() >= MAX_VALUE_WIDTHS)
+          valueWidths.clear();
+        valueWidths.put(key, width);
+      }
+      return width;
+    }
+
+    private Component renderCell(int row, int column, Object value) {
+      return table.getCellRenderer(row, column).getTableCellRendererComponent(
+          table, value, false, false, row, column);
+    }
+
+    /** Inserts unmeasured rows before the row firstRow. */
+    private void insert(int firstRow, int count) {
+      final int oldCount = rowCount;
+      if(oldCount+count > rowWidths.length)
+        rowWidths = Arrays.copyOf(rowWidths, Math.max(oldCount+count, rowWidths.length*3/2));
+      System.arraycopy(rowWidths, firstRow, rowWidths, firstRow+count, oldCount-firstRow);
+      Arrays.fill(rowWidths, firstRow, firstRow+count, (short) 0);
+      if(dirtyFrom >= dirtyTo) {
+        dirtyFrom = firstRow;
+        dirtyTo = firstRow+count;
+      } else {
+        dirtyFrom = Math.min(dirtyFrom, firstRow);
+        dirtyTo = dirtyTo > firstRow ? dirtyTo+count : firstRow+count;
+      }
+    }
+
+    private void delete(int firstRow, int count) {
+      for (int row = firstRow; row < firstRow+count; row++)
+        removeWidth(rowWidths[row]);
+      System.arraycopy(rowWidths, firstRow+count, rowWidths, firstRow,
+          rowCount-firstRow-count);
+      Arrays.fill(rowWidths, rowCount-count, rowCount, (short) 0);
+      dirtyFrom = dirtyFrom > firstRow ? Math.max(firstRow, dirtyFrom-count) : dirtyFrom;
+      dirtyTo = dirtyTo > firstRow ? Math.max(firstRow, dirtyTo-count) : dirtyTo;
+    }
+
+    /** Marks the rows from firstRow (inclusive) to endRow (exclusive) to be measured again. */
+    private void update(int firstRow, int endRow) {
+      if(firstRow >= endRow)
+        return;
+      for (int row = firstRow; row < endRow; row++) {
+        removeWidth(rowWidths[row]);
+        rowWidths[row] = 0;
+      }
+      if(dirtyFrom >= dirtyTo) {
+        dirtyFrom = firstRow;
+        dirtyTo = endRow;
+      } else {
+        dirtyFrom = Math.min(dirtyFrom, firstRow);
+        dirtyTo = Math.max(dirtyTo, endRow);
+      }
+    }
+
+    private void addWidth(int width) {
+      if(width >= widthCounts.length)
+        widthCounts = Arrays.copyOf(widthCounts, Math.max(width+1, widthCounts.length*2));
+      widthCounts[width]++;
+      if(width > maxWidth)
+        maxWidth = width;
+    }
+
+    private void removeWidth(int width) {
+      if(width == 0)
+        return;
+      widthCounts[width]--;
+      while (maxWidth > 0 && widthCounts[maxWidth] == 0)
+        maxWidth--;
+    }
+  }
+}
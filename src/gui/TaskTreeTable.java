@@ -15,6 +15,9 @@ import resources.ResourceList;
 
 import javax.swing.*;
 import javax.swing.event.TableModelEvent;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.plaf.basic.BasicHTML;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -47,13 +50,17 @@ public class TaskTreeTable extends JTable {
   private TaskTreeTableCellRenderer treeRenderer;
   private TaskTreeTableModel treeTableModel;
   private boolean listChanged;
+  private int modificationCount;
   private TreeTableModelAdapter treeTableModelAdapter;
   private TaskTableCellRenderer tableCellRenderer;
+  private ColumnWidths columnWidths;
 
   /* Constructors */
 
   public TaskTreeTable() {
     listChanged = false;
+    modificationCount = 0;
+    columnWidths = new ColumnWidths(this);
 
     /* create JTree */
     getTreeRenderer();
@@ -88,12 +95,46 @@ public class TaskTreeTable extends JTable {
 
   /* Methods */
 
+  /**
+   * Sets the height of the rows and scales the icons of the attributions and priorities to
+   * the height, so the first painted rows do not have to scale them.
+   */
+  public void setRowHeight(int rowHeight) {
+    super.setRowHeight(rowHeight);
+    for (Attribution attribution : Attribution.values())
+      attribution.getIcon(rowHeight);
+    for (Priority priority : Priority.values())
+      priority.getIcon(rowHeight);
+    /* the JTable constructor sets the row height before the widths are created */
+    if(columnWidths != null)
+      columnWidths.invalidateValues();
+  }
+
+  public void tableChanged(TableModelEvent e) {
+    super.tableChanged(e);
+    if(columnWidths != null) {
+      columnWidths.tableChanged(e);
+      /* changed values may need other column widths, the table only repaints the rows */
+      if(e.getType() == TableModelEvent.UPDATE)
+        revalidate();
+    }
+  }
+
+  public void updateUI() {
+    super.updateUI();
+    if(columnWidths != null)
+      columnWidths.invalidateValues();
+  }
+
   /**
    * Sets the widths for the columns. The tree column has always the width of the tree.
    * Every other column gets the width that is needed to show the whole content except for
    * the last (index=columnCount-1) column. As the last column should be for task
    * descriptions the column will be fit to the remaining space. It also has a minimum size
    * which is tableWidth/columnCount.
+   * <p/>
+   * The needed widths of the columns are kept by {@link ColumnWidths}, so only the cells that
+   * were changed since the last layout are rendered.
    */
   public void doLayout() {
     getColumn(treeTableModel.getColumnName(
@@ -103,11 +144,10 @@ public class TaskTreeTable extends JTable {
 
   private void fitColumnsToComponents(boolean boundToMaxWidth) {
     final int maxWidth = getWidth()/getColumnCount();
-    int rowSpan[] = getVisibleRowSpan();
     for (int index = 0; index < getColumnCount()-1; index++) {
       if(index != treeTableModel.getTreeColumn()) {
         final TableColumn column = getColumn(treeTableModel.getColumnName(index));
-        final int componentWidth = calcBiggestNeededWidth(rowSpan[0], rowSpan[1], index);
+        final int componentWidth = columnWidths.getWidth(index);
         final int columnWidth = column.getPreferredWidth();
         if(boundToMaxWidth && (componentWidth > maxWidth || columnWidth > maxWidth))
           setColumnWidth(column, maxWidth);
@@ -120,26 +160,6 @@ public class TaskTreeTable extends JTable {
     setLastColumnWidth();
   }
 
-  private int calcBiggestNeededWidth(int startRow, int endRow, int column) {
-    int biggestWidth = 0;
-    for (int row = startRow; row < endRow; row++) {
-      final Component component = getCellRenderer(row, column).getTableCellRendererComponent(
-          this, getValueAt(row, column), false, false, row, column);
-      final int componentWidth = component.getPreferredSize().width + 5;
-      biggestWidth = biggestWidth < componentWidth ? componentWidth : biggestWidth;
-    }
-    return biggestWidth;
-  }
-
-  private int[] getVisibleRowSpan() {
-    final int[] rowSpan = new int[2];
-    final int maxVisibleRows = getHeight()/getRowHeight()+1;
-    final int visibleRows = maxVisibleRows > getRowCount() ? getRowCount() : maxVisibleRows;
-    rowSpan[0] = getVisibleRect().y/getRowHeight();
-    rowSpan[1] = rowSpan[0]+visibleRows;
-    return rowSpan;
-  }
-
   private void setColumnWidth(TableColumn column, int width) {
     if(column.getWidth() != width)
       column.setWidth(width);
@@ -155,11 +175,7 @@ public class TaskTreeTable extends JTable {
 
   @SuppressWarnings("UnusedDeclaration")
   public void changeSelectedTasks(DTOTask dtoTask) {
-    final int[] selectedRows = getSelectedRows();
-    for (int row : selectedRows) {
-      final TreePath path = treeRenderer.getPathForRow(row);
-      ((MutableTaskNode) path.getLastPathComponent()).getTask().change(dtoTask);
-    }
+    treeTableModel.changeNodes(getSelectedNodes(), dtoTask);
   }
 
   @SuppressWarnings("UnusedDeclaration")
@@ -178,27 +194,64 @@ public class TaskTreeTable extends JTable {
     listChanged = true;
     if(expand)
       treeRenderer.expandPath(new TreePath(treeTableModel.getRoot()));
-    updateUI();
   }
 
   /**
    * Removes all selected task and their sub tasks from the list.
    */
   public int removeSelectedTasks() {
-    final MutableTaskNode root = ((MutableTaskNode) treeTableModel.getRoot());
-    final int totalTasksBefore = root.countAllSubNodes();
+    final List<MutableTaskNode> nodes = getSelectedNodes();
+    /* the tree would remove the selected paths of the removed nodes one by one */
+    clearSelection();
+    final int removed = treeTableModel.removeNodes(nodes);
+
+    listChanged = !nodes.isEmpty();
+    return removed;
+  }
+
+  /**
+   * Reverts the last edit of the list, e.g. the last removal of the selected tasks.
+   * @return False, if there is no edit to undo.
+   */
+  public boolean undo() {
+    clearSelection();
+    return treeTableModel.undo();
+  }
+
+  /**
+   * Applies the last undone edit again.
+   * @return False, if there is no edit to redo.
+   */
+  public boolean redo() {
+    clearSelection();
+    return treeTableModel.redo();
+  }
+
+  public boolean canUndo() {
+    return treeTableModel.canUndo();
+  }
+
+  public boolean canRedo() {
+    return treeTableModel.canRedo();
+  }
+
+  /** Returns the nodes of the selected rows in the order of the rows. */
+  private List<MutableTaskNode> getSelectedNodes() {
     /* The rows of the table must be used because the tree does not seem to
      * react to selections properly.
      */
     final int[] selectionRows = getSelectedRows();
+    final List<MutableTaskNode> nodes = new ArrayList<MutableTaskNode>(selectionRows.length);
+    for (int row : selectionRows) {
+      final TreePath path = treeRenderer.getPathForRow(row);
+      if (path != null)
+        nodes.add((MutableTaskNode) path.getLastPathComponent());
+    }
+    return nodes;
+  }
 
-    for (int row : selectionRows)
-      treeTableModel.remove(treeRenderer.getPathForRow(row));
-
-    listChanged = selectionRows.length > 0;
-    clearSelection();
-    updateUI();
-    return totalTasksBefore-root.countAllSubNodes();
+  public TaskTreeTableModel getTreeTableModel() {
+    return treeTableModel;
   }
 
   public MutableTaskNode getTaskRoot() {
@@ -206,10 +259,14 @@ public class TaskTreeTable extends JTable {
   }
 
   public void setRoot(MutableTaskNode root) {
+    if(treeTableModelAdapter != null)
+      treeTableModelAdapter.detach();
     treeTableModel = new TaskTreeTableModel(root);
+    /* the adapter has to be informed about changes after the tree updated its rows */
+    treeTableModelAdapter = new TreeTableModelAdapter(treeTableModel, treeRenderer);
     if(!treeTableModel.equals(treeRenderer.getModel()))
       treeRenderer.setModel(treeTableModel);
-    treeTableModelAdapter = new TreeTableModelAdapter(treeTableModel, treeRenderer);
+    treeTableModel.addTreeModelListener(new ModificationListener());
     super.setModel(treeTableModelAdapter);
   }
 
@@ -249,26 +306,33 @@ public class TaskTreeTable extends JTable {
     return paths;
   }
 
-  private int expandPathComplete(TreePath path) {
+  /**
+   * Expands a path and all its descendants. Expanding a row inserts the rows of its children
+   * directly after it, so the rows of all descendants are visited by walking down the rows
+   * until a row does not belong to the path anymore.
+   */
+  private void expandPathComplete(TreePath path) {
     int nextRow = treeRenderer.getRowForPath(path)+1;
     treeRenderer.expandPath(path);
     TreePath nextPath = treeRenderer.getPathForRow(nextRow);
     while (path.isDescendant(nextPath)) {
-      nextRow = expandPathComplete(nextPath);
-      nextPath = treeRenderer.getPathForRow(nextRow);
+      treeRenderer.expandPath(nextPath);
+      nextPath = treeRenderer.getPathForRow(++nextRow);
     }
-    return nextRow;
   }
 
-  private int collapsePathComplete(TreePath path) {
-    int nextRow = treeRenderer.getRowForPath(path)+1;
-    TreePath nextPath = treeRenderer.getPathForRow(nextRow);
-    while (path.isDescendant(nextPath)) {
-      nextRow = collapsePathComplete(nextPath);
-      nextPath = treeRenderer.getPathForRow(nextRow);
-    }
+  /**
+   * Collapses a path and all its descendants. The rows of the descendants are collapsed from
+   * the last to the first, as collapsing a row removes only rows behind it.
+   */
+  private void collapsePathComplete(TreePath path) {
+    final int firstRow = treeRenderer.getRowForPath(path)+1;
+    int endRow = firstRow;
+    while (path.isDescendant(treeRenderer.getPathForRow(endRow)))
+      endRow++;
+    for (int row = endRow-1; row >= firstRow; row--)
+      treeRenderer.collapseRow(row);
     treeRenderer.collapsePath(path);
-    return nextRow;
   }
 
   private void setSelectionPaths(TreePath[] paths) {
@@ -323,12 +387,43 @@ public class TaskTreeTable extends JTable {
     listChanged = changed;
   }
 
+  /**
+   * Returns the number of edits of the list. Compared to a previous value it tells if the
+   * list was changed in the meantime.
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
   public boolean hasSelectedTasks() {
     return getSelectedRow() != -1;
   }
 
   /* Inner classes */
 
+  private class ModificationListener implements TreeModelListener {
+    public void treeNodesChanged(TreeModelEvent e) {
+      modified();
+    }
+
+    public void treeNodesInserted(TreeModelEvent e) {
+      modified();
+    }
+
+    public void treeNodesRemoved(TreeModelEvent e) {
+      modified();
+    }
+
+    public void treeStructureChanged(TreeModelEvent e) {
+      modified();
+    }
+
+    private void modified() {
+      modificationCount++;
+      listChanged = true;
+    }
+  }
+
   private class ListToTreeSelectionModelWrapper extends DefaultListSelectionModel {
     private TreeSelectionModel treeSelectionModel;
     private ListToTreeSelectionModelWrapper(TreeSelectionModel treeSelectionModel) {
@@ -350,6 +445,24 @@ public class TaskTreeTable extends JTable {
       treeSelectionModel.setSelectionPaths(getPathForRange(index0, index1));
     }
 
+    public void clearSelection() {
+      super.clearSelection();
+      treeSelectionModel.clearSelection();
+    }
+
+    /** The inserted rows take the selection of their nodes in the tree. */
+    public void insertIndexInterval(int index, int length, boolean before) {
+      super.insertIndexInterval(index, length, before);
+      final int firstIndex = before ? index : index+1;
+      for (int row = firstIndex; row < firstIndex+length; row++) {
+        final boolean selected = treeSelectionModel.isRowSelected(row);
+        if(selected && !isSelectedIndex(row))
+          super.addSelectionInterval(row, row);
+        else if(!selected && isSelectedIndex(row))
+          super.removeSelectionInterval(row, row);
+      }
+    }
+
     public void setSelectionMode(int selectionMode) {
       super.setSelectionMode(selectionMode);
     }
@@ -372,6 +485,9 @@ class TaskTreeTableCellRenderer extends JTree implements TableCellRenderer {
     /* Must be called because treeTable is still null */
     /* when super(model) calls setRowHeight! */
     setRowHeight(getRowHeight());
+    /* All rows have the height of the table rows, so the tree does not need to cache the */
+    /* bounds of every row. This keeps inserting and removing many children cheap. */
+    setLargeModel(true);
   }
 
   public Component getTableCellRendererComponent(JTable table, Object value,
@@ -412,9 +528,18 @@ class TaskTreeTableCellRenderer extends JTree implements TableCellRenderer {
 }
 
 class TaskTableCellRenderer extends JLabel implements TableCellRenderer {
+  private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+  private static final int DATE_CACHE_SIZE = 256;
+
   private DateFormat dateFormat;
+  private TimeZone timeZone;
+  /* formatted due dates of the local days, a day is at the slot of its lowest bits */
+  private final long[] cachedDays;
+  private final String[] cachedDates;
 
   public TaskTableCellRenderer() {
+    cachedDays = new long[DATE_CACHE_SIZE];
+    cachedDates = new String[DATE_CACHE_SIZE];
     setOpaque(true);
     setLocale(Locale.getDefault());
   }
@@ -422,6 +547,8 @@ class TaskTableCellRenderer extends JLabel implements TableCellRenderer {
   public void setLocale(Locale locale) {
     super.setLocale(locale);
     dateFormat = new SimpleDateFormat(I18nSupport.getValue(MISC, "format.due.date"), locale);
+    timeZone = dateFormat.getTimeZone();
+    Arrays.fill(cachedDates, null);
   }
 
   public Component getTableCellRendererComponent(JTable table, Object value,
@@ -435,7 +562,7 @@ class TaskTableCellRenderer extends JLabel implements TableCellRenderer {
       setForeground(table.getForeground());
     }
     if(value instanceof Long) {
-      setText(dateFormat.format(new Date((Long) value)));
+      setText(formatDate((Long) value));
       setIcon(null);
     } else if(value instanceof Attribution) {
       setText(((Attribution) value).getDescription());
@@ -446,6 +573,61 @@ class TaskTableCellRenderer extends JLabel implements TableCellRenderer {
     }
     return this;
   }
+
+  /**
+   * Returns the formatted date of a time. The format only shows the day, so the texts are
+   * cached by the local day and a repaint of known days does not create any object.
+   */
+  private String formatDate(long time) {
+    final long localTime = time + timeZone.getOffset(time);
+    if ((localTime > time) != (timeZone.getOffset(time) > 0))
+      return dateFormat.format(new Date(time));
+
+    long day = localTime / DAY_MILLIS;
+    if (localTime % DAY_MILLIS < 0)
+      day--;
+    final int slot = (int) day & (DATE_CACHE_SIZE - 1);
+    if (cachedDates[slot] == null || cachedDays[slot] != day) {
+      cachedDays[slot] = day;
+      cachedDates[slot] = dateFormat.format(new Date(time));
+    }
+    return cachedDates[slot];
+  }
+
+  /* The renderer is only used to paint the cells, so the following methods do nothing, */
+  /* just like in DefaultTableCellRenderer. Otherwise every changed text or color would */
+  /* revalidate and repaint the renderer and notify its listeners. */
+
+  public void invalidate() {
+  }
+
+  public void validate() {
+  }
+
+  public void revalidate() {
+  }
+
+  public void repaint(long tm, int x, int y, int width, int height) {
+  }
+
+  public void repaint(Rectangle r) {
+  }
+
+  public void repaint() {
+  }
+
+  protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+    /* the UI of the label has to create or remove the view of a html text */
+    if ("text".equals(propertyName) && (isHTML(oldValue) || isHTML(newValue))) //NON-NLS
+      super.firePropertyChange(propertyName, oldValue, newValue);
+  }
+
+  private static boolean isHTML(Object text) {
+    return text instanceof String && BasicHTML.isHTMLString((String) text);
+  }
+
+  public void firePropertyChange(String propertyName, boolean oldValue, boolean newValue) {
+  }
 }
 
 class TaskTreeCellRenderer extends DefaultTreeCellRenderer {
@@ -1,16 +1,21 @@
 package gui;
 
-import business.Converter;
 import business.ConverterException;
 import business.MutableTaskNode;
 import business.Task;
+import business.TaskSnapshot;
+import business.TaskTreeTableModel;
+import data.EditJournal;
+import data.FileWatcher;
+import data.LoggingUtility;
 import data.TodoFileIO;
-import dto.DTOTask;
 import i18n.I18nSupport;
 import resources.ResourceGetter;
 import resources.ResourceList;
 
 import javax.swing.*;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
@@ -18,8 +23,15 @@ import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import static i18n.BundleStrings.*;
 
@@ -34,16 +46,34 @@ public class TodoFrame extends JFrame {
   /* Action Commands */
   private static final String AC_SAVE = "save list"; //NON-NLS
   private static final String AC_SAVE_AS = "save as"; //NON-NLS
+  private static final String AC_EXPORT_XML = "export xml"; //NON-NLS
   private static final String AC_OPEN_FILE = "open list"; //NON-NLS
   private static final String AC_CLOSE = "close"; //NON-NLS
   private static final String AC_ADD_TASK = "add task"; //NON-NLS
   private static final String AC_REMOVE_TASK = "remove task"; //NON-NLS
+  private static final String AC_UNDO = "undo"; //NON-NLS
+  private static final String AC_REDO = "redo"; //NON-NLS
   private static final String AC_LANGUAGE_ENG = "english"; //NON-NLS
   private static final String AC_LANGUAGE_GER = "deutsch"; //NON-NLS
 
+  /* System properties */
+  private static final String PROPERTY_AUTO_SAVE = "todo.autosave.enabled"; //NON-NLS
+  private static final String PROPERTY_AUTO_SAVE_QUIET_PERIOD =
+      "todo.autosave.quiet.period"; //NON-NLS
+  private static final String PROPERTY_AUTO_SAVE_MAX_DELAY = "todo.autosave.max.delay"; //NON-NLS
+  private static final String PROPERTY_COMPRESSION_LEVEL = "todo.compression.level"; //NON-NLS
+  private static final String PROPERTY_UNDO_BUDGET = "todo.undo.budget"; //NON-NLS
+
   /* constant fields */
+  private static final Logger LOGGER = LoggingUtility.getLogger(TodoFrame.class.getName());
   private static final String VERSION_NUMBER = "1.0";
   private static final int STATUS_BAR_HEIGHT = 20;
+  private static final int COMPRESSION_LEVEL =
+      Integer.getInteger(PROPERTY_COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION);
+  private static final boolean AUTO_SAVE =
+      Boolean.parseBoolean(System.getProperty(PROPERTY_AUTO_SAVE, "true")); //NON-NLS
+  private static final long UNDO_BUDGET =
+      Long.getLong(PROPERTY_UNDO_BUDGET, TaskTreeTableModel.DEFAULT_UNDO_BUDGET);
 
   private JMenuBar menuBar;
   private TaskTreeTable taskTreeTable;
@@ -53,17 +83,42 @@ public class TodoFrame extends JFrame {
   private final ActionListener taskMenuAL;
   private final ActionListener settingsMenuAL;
   private final FileMenuItemListener fileMenuAL;
+  private final ExecutorService saveExecutor;
+  private final List<SaveWorker> saveWorkers;
+  private final List<Runnable> afterSaves;
+  private final AutoSaver autoSaver;
+  private final TreeModelListener undoStateListener;
 
   private File currentFile;
+  private TodoFileIO.Format currentFormat;
+  private EditJournal journal;
+  private FileWatcher fileWatcher;
+  private long fileLength;
+  private long fileModified;
 
   /* Constructors */
 
   public TodoFrame() {
     final FramePosition position = FramePosition.createFramePosition(0.8f);
     currentFile = null;
+    currentFormat = TodoFileIO.Format.BINARY;
+    journal = null;
+    fileWatcher = null;
     taskMenuAL = new TaskActionListener(this);
     settingsMenuAL = new SettingsMenuItemListener();
     fileMenuAL = new FileMenuItemListener(this);
+    saveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "Save"); //NON-NLS
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    saveWorkers = new ArrayList<SaveWorker>();
+    afterSaves = new ArrayList<Runnable>();
+    autoSaver = new AutoSaver(fileMenuAL,
+        Integer.getInteger(PROPERTY_AUTO_SAVE_QUIET_PERIOD, AutoSaver.DEFAULT_QUIET_PERIOD),
+        Integer.getInteger(PROPERTY_AUTO_SAVE_MAX_DELAY, AutoSaver.DEFAULT_MAX_DELAY));
 
     setBounds(position.getBounds());
     setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
@@ -74,6 +129,12 @@ public class TodoFrame extends JFrame {
     setJMenuBar(getCreateMenuBar());
 
     initComponents();
+    taskTreeTable.getTreeTableModel().setUndoBudget(UNDO_BUDGET);
+    if (AUTO_SAVE)
+      taskTreeTable.getTreeTableModel().addTreeModelListener(autoSaver);
+    undoStateListener = new UndoStateListener();
+    taskTreeTable.getTreeTableModel().addTreeModelListener(undoStateListener);
+    updateUndoItems();
   }
 
   private String getTitleString() {
@@ -105,6 +166,7 @@ public class TodoFrame extends JFrame {
     addMenuItem(menu, AC_SAVE, ResourceGetter.getImage(ResourceList.IMAGE_SAVE_FILE),
         KeyStroke.getKeyStroke(KeyEvent.VK_S, ctrl), fileMenuAL);
     addMenuItem(menu, AC_SAVE_AS, KeyStroke.getKeyStroke(KeyEvent.VK_S, ctrl | shift), fileMenuAL);
+    addMenuItem(menu, AC_EXPORT_XML, KeyStroke.getKeyStroke(KeyEvent.VK_E, ctrl), fileMenuAL);
     menu.addSeparator();
     addMenuItem(menu, AC_CLOSE, KeyStroke.getKeyStroke(KeyEvent.VK_Q, ctrl), fileMenuAL);
     menuBar.add(menu);
@@ -126,6 +188,9 @@ public class TodoFrame extends JFrame {
         KeyStroke.getKeyStroke(KeyEvent.VK_A, ctrl), taskMenuAL);
     addMenuItem(menu, AC_REMOVE_TASK, ResourceGetter.getImage(ResourceList.IMAGE_MINUS_RED),
         KeyStroke.getKeyStroke(KeyEvent.VK_R, ctrl), taskMenuAL);
+    menu.addSeparator();
+    addMenuItem(menu, AC_UNDO, KeyStroke.getKeyStroke(KeyEvent.VK_Z, ctrl), taskMenuAL);
+    addMenuItem(menu, AC_REDO, KeyStroke.getKeyStroke(KeyEvent.VK_Y, ctrl), taskMenuAL);
     menuBar.add(menu);
 
     return menuBar;
@@ -174,6 +239,8 @@ public class TodoFrame extends JFrame {
   }
 
   public void setLocale(Locale locale) {
+    /* all texts of the new language are read before the components ask for them */
+    I18nSupport.setLocale(locale);
     super.setLocale(locale);
 
     /* reset frames i18n */
@@ -233,8 +300,10 @@ public class TodoFrame extends JFrame {
     item.setText(I18nSupport.getValue(COMPONENTS, "text.save"));
     item = ((JMenuItem) menu.getMenuComponent(2));
     item.setText(I18nSupport.getValue(COMPONENTS, "text.save.as"));
-    /* item 3 is a separator */
-    item = ((JMenuItem) menu.getMenuComponent(4));
+    item = ((JMenuItem) menu.getMenuComponent(3));
+    item.setText(I18nSupport.getValue(COMPONENTS, "text.export.xml"));
+    /* item 4 is a separator */
+    item = ((JMenuItem) menu.getMenuComponent(5));
     item.setText(I18nSupport.getValue(COMPONENTS, "text.close"));
 
     /* reset the settings menu */
@@ -260,6 +329,11 @@ public class TodoFrame extends JFrame {
     item.setText(I18nSupport.getValue(COMPONENTS, "text.add.task"));
     item = ((JMenuItem) menu.getMenuComponent(1));
     item.setText(I18nSupport.getValue(COMPONENTS, "text.remove.task"));
+    /* item 2 is a separator */
+    item = ((JMenuItem) menu.getMenuComponent(3));
+    item.setText(I18nSupport.getValue(COMPONENTS, "text.undo"));
+    item = ((JMenuItem) menu.getMenuComponent(4));
+    item.setText(I18nSupport.getValue(COMPONENTS, "text.redo"));
   }
 
   private TaskTreeTable getTableContainer() {
@@ -278,6 +352,14 @@ public class TodoFrame extends JFrame {
     /* or after changing the bound properties. */
     setSize(getWidth() + 1, getHeight());
     setSize(getWidth()-1, getHeight());
+    updateUndoItems();
+  }
+
+  /** Enables the undo and redo items only, if there is an edit to undo or redo. */
+  private void updateUndoItems() {
+    final JMenu menu = menuBar.getMenu(2);
+    menu.getMenuComponent(3).setEnabled(taskTreeTable.canUndo());
+    menu.getMenuComponent(4).setEnabled(taskTreeTable.canRedo());
   }
 
   /* Getter and Setter */
@@ -338,9 +420,245 @@ public class TodoFrame extends JFrame {
     return taskTreeTable.hasListChanged();
   }
 
+  /**
+   * Records all following edits of the task tree in the journal.
+   */
+  private void attachJournal(EditJournal newJournal) {
+    closeJournal();
+    journal = newJournal;
+    taskTreeTable.getTreeTableModel().addTreeModelListener(journal);
+  }
+
+  /**
+   * Stops recording the edits in the current journal. Edits that were not saved will be
+   * removed from the journal.
+   */
+  private void closeJournal() {
+    if (journal != null) {
+      taskTreeTable.getTreeTableModel().removeTreeModelListener(journal);
+      journal.close(true);
+      journal = null;
+    }
+  }
+
+  /**
+   * Watches a file for changes by other programs instead of the current one.
+   */
+  private void watchFile(final File file) {
+    if (fileWatcher != null) {
+      if (fileWatcher.getFile().equals(file.getAbsoluteFile()))
+        return;
+      fileWatcher.close();
+      fileWatcher = null;
+    }
+
+    try {
+      fileWatcher = FileWatcher.watch(file, new FileWatcher.Listener() {
+        public void fileChanged(File changedFile) {
+          SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+              if (file.equals(currentFile))
+                checkFile();
+            }
+          });
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.warning("Could not watch the file " + file + ": " + e.getMessage());
+    }
+  }
+
+  /** Remembers the size and modification time of the current file after reading or writing. */
+  private void rememberFileState() {
+    fileLength = getCurrentFile().length();
+    fileModified = getCurrentFile().lastModified();
+  }
+
+  /**
+   * Returns true, if another program changed the current file since it was read or written.
+   * The journal knows, if it replaced the file by a compaction.
+   */
+  private boolean isChangedExternally() throws IOException {
+    final File file = getCurrentFile();
+    if (!file.isFile() || hasPendingSave()
+        || (file.length() == fileLength && file.lastModified() == fileModified))
+      return false;
+    return journal == null || !journal.matchesBase();
+  }
+
+  /**
+   * Applies the changes of the current file by another program to the list. If the list
+   * was changed as well, the user decides if the own changes are discarded. If not, the
+   * next save writes the whole list to the file.
+   */
+  private void checkFile() {
+    try {
+      if (!isChangedExternally()) {
+        rememberFileState();
+        return;
+      }
+    } catch (IOException e) {
+      LOGGER.warning("Could not check the file " + currentFile + ": " + e.getMessage());
+      return;
+    }
+    rememberFileState();
+
+    if (hasChanged()) {
+      final String[] strings = {I18nSupport.getValue(COMPONENTS, "text.reload"),
+          I18nSupport.getValue(COMPONENTS, "text.keep.changes")};
+      final int result = GUIUtilities.showConfirmDialog(this, strings,
+          I18nSupport.getValue(MESSAGES, "question.reload.changed.file.0",
+              currentFile.getAbsolutePath()), "", JOptionPane.QUESTION_MESSAGE, 1);
+      if (result != JOptionPane.YES_OPTION) {
+        closeJournal();
+        return;
+      }
+    }
+    reloadFile();
+    updateGUI();
+  }
+
+  /**
+   * Reads the current file again and applies only the differences to the list.
+   */
+  private void reloadFile() {
+    EditJournal openedJournal = null;
+    try {
+      final MutableTaskNode root = TodoFileIO.readTaskTree(currentFile);
+      currentFormat = TodoFileIO.getFormat(currentFile);
+      closeJournal();
+      openedJournal = EditJournal.open(currentFile, root);
+      final int differences = taskTreeTable.getTreeTableModel().merge(root);
+      autoSaver.reset();
+      attachJournal(openedJournal);
+      taskTreeTable.setListChanged(openedJournal.isRecovered());
+      statusBar.setText(I18nSupport.getValue(MESSAGES, "reloaded.file.0.with.1.changes",
+          currentFile.getAbsolutePath(), differences));
+    } catch (IOException e) {
+      LOGGER.warning("Could not reload the file " + currentFile + ": " + e.getMessage());
+      statusBar.setText(I18nSupport.getValue(MESSAGES, "could.not.load.list"));
+    } catch (ConverterException e) {
+      LOGGER.warning("Could not reload the file " + currentFile + ": " + e.getMessage());
+      statusBar.setText(I18nSupport.getValue(MESSAGES, "wrong.file.format"));
+    } catch (IllegalStateException e) {
+      /* a task of the read file is corrupt, the list may be merged partly */
+      LOGGER.warning("Could not reload the file " + currentFile + ": " + e.getMessage());
+      if (openedJournal != null)
+        openedJournal.close(false);
+      taskTreeTable.setListChanged(true);
+      statusBar.setText(I18nSupport.getValue(MESSAGES, "wrong.file.format"));
+    }
+  }
+
+  private void startSave(SaveWorker worker) {
+    saveWorkers.add(worker);
+    statusBar.setWorking(true);
+    statusBar.setText(I18nSupport.getValue(MESSAGES, "saving.file.0",
+        worker.file.getAbsolutePath()));
+    saveExecutor.execute(worker);
+  }
+
+  /** Returns true, if the list is written to its file in the background. */
+  private boolean hasPendingSave() {
+    for (SaveWorker worker : saveWorkers) {
+      if (!worker.export)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Runs a continuation on the event dispatch thread after all files were written that are
+   * saved in the background. If there is no such file, it runs immediately.
+   */
+  private void afterSaves(Runnable continuation) {
+    if (saveWorkers.isEmpty())
+      continuation.run();
+    else afterSaves.add(continuation);
+  }
+
+  /** Runs the continuations that waited for the background saves. */
+  private void savesFinished() {
+    final List<Runnable> continuations = new ArrayList<Runnable>(afterSaves);
+    afterSaves.clear();
+    for (Runnable continuation : continuations)
+      continuation.run();
+  }
+
   /* Inner Classes */
 
-  private class FileMenuItemListener extends WindowAdapter implements ActionListener {
+  /**
+   * Writes a snapshot of the task tree in the background. The snapshot is taken on the event
+   * dispatch thread when the worker is created, so the list can be edited while the snapshot
+   * is written. Only the tasks that changed since the last snapshot are copied.
+   */
+  private class SaveWorker extends SwingWorker<Void, Void> {
+    private final MutableTaskNode source;
+    private final TaskSnapshot snapshot;
+    private final int modificationCount;
+    private final File file;
+    private final TodoFileIO.Format format;
+    private final boolean export;
+
+    private SaveWorker(File file, TodoFileIO.Format format, boolean export) {
+      source = taskTreeTable.getTaskRoot();
+      snapshot = source.snapshot();
+      modificationCount = taskTreeTable.getModificationCount();
+      this.file = file;
+      this.format = format;
+      this.export = export;
+    }
+
+    protected Void doInBackground() throws IOException {
+      TodoFileIO.writeTaskTree(snapshot.createTree(), file, format,
+          TodoFileIO.Compression.forFile(file), COMPRESSION_LEVEL);
+      return null;
+    }
+
+    protected void done() {
+      saveWorkers.remove(this);
+      statusBar.setWorking(!saveWorkers.isEmpty());
+      try {
+        get();
+        if (export) {
+          statusBar.setText(I18nSupport.getValue(MESSAGES, "exported.file.0",
+              file.getAbsolutePath()));
+        } else saved();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        statusBar.setText(I18nSupport.getValue(MESSAGES, "could.not.save.list"));
+        JOptionPane.showMessageDialog(TodoFrame.this, I18nSupport.getValue(MESSAGES,
+            "could.not.save.list"), "", JOptionPane.ERROR_MESSAGE);
+      }
+      updateGUI();
+      if (saveWorkers.isEmpty())
+        savesFinished();
+    }
+
+    /**
+     * Starts a new journal for the file, if the written copy is still equal to the list.
+     * Otherwise the list stays changed and the next save writes the whole list again.
+     */
+    private void saved() {
+      if (source == taskTreeTable.getTaskRoot() && file.equals(currentFile)
+          && !hasPendingSave() && modificationCount == taskTreeTable.getModificationCount()) {
+        try {
+          attachJournal(EditJournal.create(file));
+        } catch (IOException e) {
+          closeJournal();
+        }
+        taskTreeTable.setListChanged(false);
+      }
+      if (file.equals(currentFile))
+        rememberFileState();
+      statusBar.setText(I18nSupport.getValue(MESSAGES, "saved.file.0",
+          file.getAbsolutePath()));
+    }
+  }
+
+  private class FileMenuItemListener extends WindowAdapter
+      implements ActionListener, AutoSaver.Target {
     private TodoFrame frame;
 
     private FileMenuItemListener(TodoFrame frame) {
@@ -358,6 +676,8 @@ public class TodoFrame extends JFrame {
         saveFile();
       } else if (AC_SAVE_AS.equals(e.getActionCommand())) {
         saveFileAs();
+      } else if (AC_EXPORT_XML.equals(e.getActionCommand())) {
+        exportXML();
       } else if (AC_CLOSE.equals(e.getActionCommand())) {
         closeApplication();
       }
@@ -378,36 +698,52 @@ public class TodoFrame extends JFrame {
 
       if (result == JOptionPane.OK_OPTION) {
         saveFile();
-        closeWindow();
+        /* the window stays open, if the list could not be saved or was changed meanwhile */
+        afterSaves(new Runnable() {
+          public void run() {
+            if (!hasChanged())
+              closeWindow();
+          }
+        });
       } else if (result == JOptionPane.NO_OPTION) {
-        closeWindow();
+        afterSaves(new Runnable() {
+          public void run() {
+            closeWindow();
+          }
+        });
       } else {
         setVisible(true);
       }
     }
 
     private void closeWindow() {
+      closeJournal();
+      autoSaver.logStatistics();
       /* Close window smooth */
       setVisible(false);
       dispose();
       System.exit(0);
     }
 
+    /** Writes the list to a new file, which converts the list to the binary format. */
     private void saveFileAs() {
       final File selectedFile = GUIUtilities.getSaveFile(currentFile, frame);
-      try {
-        if (selectedFile != null)
-          writeListToFile(selectedFile);
-      } catch (IOException e) {
-        JOptionPane.showMessageDialog(frame, I18nSupport.getValue(MESSAGES,
-            "could.not.save.list"), "", JOptionPane.ERROR_MESSAGE);
-      }
+      if (selectedFile != null)
+        writeListToFile(selectedFile, TodoFileIO.Format.BINARY);
+    }
+
+    private void exportXML() {
+      final File selectedFile = GUIUtilities.getExportFile(currentFile, frame);
+      if (selectedFile != null)
+        startSave(new SaveWorker(selectedFile, TodoFileIO.Format.XML, true));
     }
 
     private void saveFile() {
       try {
-        if (getCurrentFile().exists()) {
-          writeListToFile(currentFile);
+        if (getCurrentFile().exists() || hasPendingSave()) {
+          if (canCommitJournal())
+            commitJournal();
+          else writeListToFile(currentFile, currentFormat);
         } else
           saveFileAs();
       } catch (IOException e) {
@@ -416,35 +752,101 @@ public class TodoFrame extends JFrame {
       }
     }
 
-    private void writeListToFile(File file) throws IOException {
-      final List<DTOTask> tasks = Converter.toDTOList(taskTreeTable.getTaskRoot());
-      TodoFileIO.writeTodoFile(tasks, file);
-      setCurrentFile(file);
+    /**
+     * Forces the edits that were recorded by the journal to the disk without committing
+     * them, so they are recovered when the file is opened after a crash. The file itself is
+     * not written and the list stays changed, so closing without saving still discards them.
+     * @return False, if the list has no journal that recorded all edits.
+     */
+    public boolean autoSave() {
+      if (journal == null || !journal.isValid())
+        return false;
+
+      try {
+        journal.flush();
+      } catch (IOException e) {
+        LOGGER.warning("Could not save the edits of " + currentFile + ": " + e.getMessage());
+      }
+      autoSaver.saveFinished();
+      return true;
+    }
+
+    /** Returns true, if all edits since the last save are recorded in the journal. */
+    private boolean canCommitJournal() {
+      return journal != null && journal.isValid() && journal.getBaseFile().equals(currentFile)
+          && !hasPendingSave();
+    }
+
+    /**
+     * Saves the edits by committing them to the journal of the current file.
+     */
+    private void commitJournal() throws IOException {
+      autoSaver.reset();
+      journal.commit();
       taskTreeTable.setListChanged(false);
       statusBar.setText(I18nSupport.getValue(MESSAGES, "saved.file.0",
-          file.getAbsolutePath()));
+          currentFile.getAbsolutePath()));
+    }
+
+    /**
+     * Writes the whole list to a file in the background. A new journal for the file will be
+     * started when the file was written.
+     * @param format Format of the file, which will be kept by the following saves.
+     */
+    private void writeListToFile(File file, TodoFileIO.Format format) {
+      autoSaver.reset();
+      closeJournal();
+      setCurrentFile(file);
+      currentFormat = format;
+      watchFile(file);
+      startSave(new SaveWorker(file, format, false));
     }
 
     private void openFile() {
       final File selectedFile = GUIUtilities.getOpenFile(currentFile, frame);
       if (selectedFile != null) {
-        try {
-          final List<DTOTask> dtoTasks = TodoFileIO.readTodoFile(selectedFile);
-          final MutableTaskNode root = Converter.fromDTOList(dtoTasks);
-          taskTreeTable.setRoot(root);
-          frame.setCurrentFile(selectedFile);
-          taskTreeTable.setListChanged(false);
-          statusBar.setText(I18nSupport.getValue(MESSAGES, "opened.file.0",
-              selectedFile.getAbsolutePath()));
-        } catch (IOException e) {
-          JOptionPane.showMessageDialog(frame,
-              I18nSupport.getValue(MESSAGES, "could.not.load.list"), "",
-              JOptionPane.ERROR_MESSAGE);
-        } catch (ConverterException e) {
-          JOptionPane.showMessageDialog(frame,
-              I18nSupport.getValue(MESSAGES, "wrong.file.format"), "",
-              JOptionPane.ERROR_MESSAGE);
-        }
+        afterSaves(new Runnable() {
+          public void run() {
+            openFile(selectedFile);
+            updateGUI();
+          }
+        });
+      }
+    }
+
+    /**
+     * Reads a file and shows its list. The list that was shown before stays with its journal,
+     * if the file could not be read.
+     */
+    private void openFile(File selectedFile) {
+      try {
+        final MutableTaskNode root = TodoFileIO.readTaskTree(selectedFile);
+        final TodoFileIO.Format format = TodoFileIO.getFormat(selectedFile);
+        closeJournal();
+        final EditJournal openedJournal = EditJournal.open(selectedFile, root);
+        taskTreeTable.setRoot(root);
+        taskTreeTable.getTreeTableModel().setUndoBudget(UNDO_BUDGET);
+        if (AUTO_SAVE)
+          taskTreeTable.getTreeTableModel().addTreeModelListener(autoSaver);
+        taskTreeTable.getTreeTableModel().addTreeModelListener(undoStateListener);
+        autoSaver.reset();
+        attachJournal(openedJournal);
+        frame.setCurrentFile(selectedFile);
+        currentFormat = format;
+        rememberFileState();
+        watchFile(selectedFile);
+        /* replayed edits that were not saved before */
+        taskTreeTable.setListChanged(openedJournal.isRecovered());
+        statusBar.setText(I18nSupport.getValue(MESSAGES, "opened.file.0",
+            selectedFile.getAbsolutePath()));
+      } catch (IOException e) {
+        JOptionPane.showMessageDialog(frame,
+            I18nSupport.getValue(MESSAGES, "could.not.load.list"), "",
+            JOptionPane.ERROR_MESSAGE);
+      } catch (ConverterException e) {
+        JOptionPane.showMessageDialog(frame,
+            I18nSupport.getValue(MESSAGES, "wrong.file.format"), "",
+            JOptionPane.ERROR_MESSAGE);
       }
     }
   }
@@ -464,6 +866,25 @@ public class TodoFrame extends JFrame {
     }
   }
 
+  /** Keeps the undo and redo items up to date while the list is edited, e.g. in a cell. */
+  private class UndoStateListener implements TreeModelListener {
+    public void treeNodesChanged(TreeModelEvent e) {
+      updateUndoItems();
+    }
+
+    public void treeNodesInserted(TreeModelEvent e) {
+      updateUndoItems();
+    }
+
+    public void treeNodesRemoved(TreeModelEvent e) {
+      updateUndoItems();
+    }
+
+    public void treeStructureChanged(TreeModelEvent e) {
+      updateUndoItems();
+    }
+  }
+
   private class TaskActionListener implements ActionListener {
     private TodoFrame frame;
 
@@ -477,6 +898,12 @@ public class TodoFrame extends JFrame {
         addTask();
       } else if (AC_REMOVE_TASK.equals(e.getActionCommand())) {
         removeTasks();
+      } else if (AC_UNDO.equals(e.getActionCommand())) {
+        if (taskTreeTable.undo())
+          statusBar.setText(I18nSupport.getValue(MESSAGES, "undone.edit"));
+      } else if (AC_REDO.equals(e.getActionCommand())) {
+        if (taskTreeTable.redo())
+          statusBar.setText(I18nSupport.getValue(MESSAGES, "redone.edit"));
       }
       updateGUI();
     }
@@ -513,8 +940,13 @@ public class TodoFrame extends JFrame {
 
 class GUIUtilities {
   private static final FileFilter FILE_FILTER = new FileNameExtensionFilter(
-      I18nSupport.getValue(MISC, "file.filter.todo.description"), "todo"); //NON-NLS
+      I18nSupport.getValue(MISC, "file.filter.todo.description"),
+      "todo", "gz", "deflate"); //NON-NLS
+  private static final FileFilter XML_FILE_FILTER = new FileNameExtensionFilter(
+      I18nSupport.getValue(MISC, "file.filter.xml.description"),
+      "xml", "gz", "deflate"); //NON-NLS
   private static final String DOT_EXTENSION_TODO = ".todo"; //NON-NLS
+  private static final String DOT_EXTENSION_XML = ".xml"; //NON-NLS
   private static final String DEFAULT_LIST_NAME =
       I18nSupport.getValue(MISC, "default.file.name");
 
@@ -532,6 +964,7 @@ class GUIUtilities {
     final File selectedFile;
 
     chooser = new JFileChooser();
+    chooser.addChoosableFileFilter(XML_FILE_FILTER);
     chooser.setFileFilter(FILE_FILTER);
     chooser.setMultiSelectionEnabled(false);
     if (startFile != null)
@@ -555,12 +988,29 @@ class GUIUtilities {
    *         otherwise null.
    */
   public static File getSaveFile(File startFile, Component parent) {
+    return getSaveFile(startFile, parent, FILE_FILTER, DOT_EXTENSION_TODO);
+  }
+
+  /**
+   * Opens a save file dialog for an XML export at the specified file if it exists.
+   * The method returns a File-Object of the selected file.
+   *
+   * @param startFile Opens the chooser on this file
+   * @return The selected file if the approved option was pressed,
+   *         otherwise null.
+   */
+  public static File getExportFile(File startFile, Component parent) {
+    return getSaveFile(startFile, parent, XML_FILE_FILTER, DOT_EXTENSION_XML);
+  }
+
+  private static File getSaveFile(File startFile, Component parent, FileFilter filter,
+                                  String dotExtension) {
     final JFileChooser chooser;
     final int chooserResult;
     File selectedFile;
 
     chooser = new JFileChooser();
-    chooser.setFileFilter(FILE_FILTER);
+    chooser.setFileFilter(filter);
     chooser.setMultiSelectionEnabled(false);
     if (startFile != null)
       chooser.setSelectedFile(startFile);
@@ -570,14 +1020,27 @@ class GUIUtilities {
     if (JFileChooser.APPROVE_OPTION == chooserResult) {
       selectedFile = chooser.getSelectedFile();
       String path = selectedFile.getAbsolutePath();
-      if (!path.toLowerCase().endsWith(DOT_EXTENSION_TODO)) {
-        selectedFile = new File(path + DOT_EXTENSION_TODO);
+      if (!hasExtension(path, dotExtension)) {
+        selectedFile = new File(path + dotExtension);
       }
     } else selectedFile = null;
 
     return selectedFile;
   }
 
+  /**
+   * Returns true, if the path ends with the extension, optionally followed by the suffix of
+   * a compression.
+   */
+  private static boolean hasExtension(String path, String dotExtension) {
+    final String lowerPath = path.toLowerCase();
+    for (TodoFileIO.Compression compression : TodoFileIO.Compression.values()) {
+      if (lowerPath.endsWith(dotExtension + compression.getSuffix()))
+        return true;
+    }
+    return false;
+  }
+
   @SuppressWarnings("MagicConstant")
   public static int showConfirmDialog(Component parentComponent, String[] strings,
                                       Object message, String title, int messageType,
@@ -28,6 +28,7 @@ public class TodoStatusBar extends JPanel implements Runnable {
   private JPanel besideLabelPanel;
   private JLabel mainStatusLabel;
   private JLabel clockLabel;
+  private JProgressBar progressBar;
   private Boolean running;
 
 
@@ -54,8 +55,12 @@ public class TodoStatusBar extends JPanel implements Runnable {
 
     besideLabelPanel = new JPanel();
     clockLabel = new JLabel();
+    progressBar = new JProgressBar();
+    progressBar.setIndeterminate(true);
+    progressBar.setVisible(false);
 
     besideLabelPanel.setLayout(new BoxLayout(besideLabelPanel, BoxLayout.LINE_AXIS));
+    besideLabelPanel.add(progressBar);
     addStatusLabel(besideLabelPanel, clockLabel);
 
     return besideLabelPanel;
@@ -71,6 +76,14 @@ public class TodoStatusBar extends JPanel implements Runnable {
     mainStatusLabel.setText(text);
   }
 
+  /**
+   * Shows a progress bar while a task runs in the background.
+   * @param working True, if the progress bar should be shown.
+   */
+  public void setWorking(boolean working) {
+    progressBar.setVisible(working);
+  }
+
   private void setTime(long millisSince1970) {
     calendar.setTimeInMillis(millisSince1970);
     clockLabel.setText(format.format(calendar.getTime()));
@@ -1,11 +1,11 @@
 package gui.treeTable;
 
+import business.TreeTraversal;
+
 import javax.swing.event.EventListenerList;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
-import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
-import java.util.Enumeration;
 
 /**
  * User: Timm Herrmann
@@ -89,27 +89,29 @@ public abstract class AbstractTreeTableModel implements TreeTableModel {
   }
 
   /**
-   * Returns the number of all children in the tree.
+   * Returns the number of all children in the tree. The tree is walked by the methods of the
+   * model without recursion, so the depth of the tree does not matter.
    * @return An integer of the number of the root's children.
    */
   @SuppressWarnings("UnusedDeclaration")
   public int getTotalChildCount() {
-    int sum = getChildCount(root);
-    if(root instanceof TreeNode)
-      sum = getTotalChildCount((TreeNode) root, sum);
-    return sum;
-  }
+    final int[] sum = new int[1];
+    new TreeTraversal<Object>() {
+      protected int getChildCount(Object node) {
+        return AbstractTreeTableModel.this.getChildCount(node);
+      }
 
-  private int getTotalChildCount(TreeNode subNode, int init) {
-    final Enumeration children = subNode.children();
-    while (children.hasMoreElements()) {
-      final Object child = children.nextElement();
-      if(child instanceof TreeNode) {
-        final TreeNode childNode = (TreeNode) child;
-        init = getTotalChildCount(childNode, childNode.getChildCount() + init);
-      } else init = init + getChildCount(child);
-    }
-    return init;
+      protected Object getChild(Object node, int index) {
+        return AbstractTreeTableModel.this.getChild(node, index);
+      }
+
+      protected boolean enter(Object node, int depth) {
+        if (depth > 0)
+          sum[0]++;
+        return true;
+      }
+    }.traverse(root);
+    return sum[0];
   }
 
   public abstract int getTreeColumn();
@@ -3,31 +3,55 @@ package gui.treeTable;
 import javax.swing.*;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.tree.TreePath;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
 
 /**
  * User: Timm Herrmann
  * Date: 02.02.13
  * Time: 17:40
+ * <p/>
+ * Shows the visible rows of a tree as rows of a table. Expanded or collapsed nodes and
+ * inserted, removed or changed nodes of the tree model are passed to the table as the
+ * inserted, deleted or updated rows, so the table keeps its selection and only repaints and
+ * measures the rows that are concerned.
+ * <p/>
+ * The rows are read from the tree after the tree has updated its rows. The tree informs its
+ * own listeners before any other expansion listener. Listeners of the tree model are informed
+ * from the last to the first, so the adapter has to be created before the model is set to the
+ * tree.
  */
 public class TreeTableModelAdapter extends AbstractTableModel {
   protected JTree tree;
   protected AbstractTreeTableModel treeTableModel;
+  /* the number of rows the listeners of the table know */
+  private int rowCount;
+  private final TreeHandler handler;
 
   public TreeTableModelAdapter(AbstractTreeTableModel treeTableModel, JTree tree) {
     this.tree = tree;
     this.treeTableModel = treeTableModel;
+    rowCount = tree.getRowCount();
 
-    tree.addTreeExpansionListener(new TreeExpansionListener() {
-      public void treeExpanded(TreeExpansionEvent event) {
-        fireTableDataChanged();
-      }
+    handler = new TreeHandler();
+    tree.addTreeExpansionListener(handler);
+    tree.addPropertyChangeListener(handler);
+    treeTableModel.addTreeModelListener(handler);
+  }
 
-      public void treeCollapsed(TreeExpansionEvent event) {
-        fireTableDataChanged();
-      }
-    });
+  /**
+   * Stops listening to the tree and the model. Has to be called before the adapter is
+   * replaced, otherwise the tree keeps the adapter and its model.
+   */
+  public void detach() {
+    tree.removeTreeExpansionListener(handler);
+    tree.removePropertyChangeListener(handler);
+    treeTableModel.removeTreeModelListener(handler);
   }
 
   public int getColumnCount() {
@@ -64,4 +88,171 @@ public class TreeTableModelAdapter extends AbstractTableModel {
   public void setValueAt(Object value, int row, int column) {
     treeTableModel.setValueAt(value, nodeForRow(row), column);
   }
+
+  public void fireTableDataChanged() {
+    rowCount = tree.getRowCount();
+    super.fireTableDataChanged();
+  }
+
+  /**
+   * Returns the row after the last visible descendant of a path, this is the row of the next
+   * sibling of the path or of an ancestor.
+   */
+  private int getEndRow(TreePath path) {
+    for (TreePath parentPath = path.getParentPath(); parentPath != null;
+         path = parentPath, parentPath = path.getParentPath()) {
+      final Object parent = parentPath.getLastPathComponent();
+      final int index = treeTableModel.getIndexOfChild(parent, path.getLastPathComponent());
+      if(index+1 < treeTableModel.getChildCount(parent))
+        return tree.getRowForPath(
+            parentPath.pathByAddingChild(treeTableModel.getChild(parent, index+1)));
+    }
+    return tree.getRowCount();
+  }
+
+  /** Returns the row of a child of a path or the end row of the path, if there is no child. */
+  private int getChildRow(TreePath parentPath, int index) {
+    final Object parent = parentPath.getLastPathComponent();
+    if(index < treeTableModel.getChildCount(parent))
+      return tree.getRowForPath(
+          parentPath.pathByAddingChild(treeTableModel.getChild(parent, index)));
+    return getEndRow(parentPath);
+  }
+
+  /** The row of a parent may show if it has children, so it is updated after a change. */
+  private void fireParentUpdated(TreePath parentPath) {
+    final int row = tree.getRowForPath(parentPath);
+    if(row != -1)
+      fireTableRowsUpdated(row, row);
+  }
+
+  /**
+   * Returns the sorted rows of the children of an event. Children that are not visible have
+   * the row -1 and are at the beginning.
+   */
+  private int[] getChildRows(TreeModelEvent e) {
+    final Object[] children = e.getChildren();
+    final int[] rows = new int[children.length];
+    for (int index = 0; index < children.length; index++)
+      rows[index] = tree.getRowForPath(e.getTreePath().pathByAddingChild(children[index]));
+    Arrays.sort(rows);
+    return rows;
+  }
+
+  /* Inner classes */
+
+  private class TreeHandler
+      implements TreeExpansionListener, TreeModelListener, PropertyChangeListener {
+    public void treeExpanded(TreeExpansionEvent event) {
+      final int inserted = tree.getRowCount()-rowCount;
+      if(inserted < 0) {
+        fireTableDataChanged();
+      } else if(inserted > 0) {
+        final int firstRow = tree.getRowForPath(event.getPath())+1;
+        rowCount = tree.getRowCount();
+        fireTableRowsInserted(firstRow, firstRow+inserted-1);
+      }
+    }
+
+    public void treeCollapsed(TreeExpansionEvent event) {
+      final int deleted = rowCount-tree.getRowCount();
+      if(deleted < 0) {
+        fireTableDataChanged();
+      } else if(deleted > 0) {
+        final int firstRow = tree.getRowForPath(event.getPath())+1;
+        rowCount = tree.getRowCount();
+        fireTableRowsDeleted(firstRow, firstRow+deleted-1);
+      }
+    }
+
+    public void treeNodesChanged(TreeModelEvent e) {
+      if(e.getChildren() == null) {
+        fireParentUpdated(e.getTreePath());
+        return;
+      }
+      final int[] rows = getChildRows(e);
+      for (int index = 0; index < rows.length; index++) {
+        if(rows[index] != -1) {
+          final int firstRow = rows[index];
+          while (index+1 < rows.length && rows[index+1] <= rows[index]+1)
+            index++;
+          fireTableRowsUpdated(firstRow, rows[index]);
+        }
+      }
+    }
+
+    /** New nodes are collapsed, so every visible inserted node is one row. */
+    public void treeNodesInserted(TreeModelEvent e) {
+      final int inserted = tree.getRowCount()-rowCount;
+      if(inserted == 0) {
+        fireParentUpdated(e.getTreePath());
+        return;
+      }
+      final int[] rows = getChildRows(e);
+      int visible = 0;
+      for (int row : rows)
+        if(row != -1)
+          visible++;
+      if(visible != inserted) {
+        fireTableDataChanged();
+        return;
+      }
+
+      rowCount = tree.getRowCount();
+      for (int index = rows.length-visible; index < rows.length; index++) {
+        final int firstRow = rows[index];
+        while (index+1 < rows.length && rows[index+1] == rows[index]+1)
+          index++;
+        fireTableRowsInserted(firstRow, rows[index]);
+      }
+      fireParentUpdated(e.getTreePath());
+    }
+
+    /**
+     * The rows of the removed nodes and their descendants are not known anymore. The rows
+     * between the first and the last removed node are replaced by the remaining rows, so
+     * removing consecutive nodes only deletes rows.
+     */
+    public void treeNodesRemoved(TreeModelEvent e) {
+      final int deleted = rowCount-tree.getRowCount();
+      if(deleted == 0) {
+        fireParentUpdated(e.getTreePath());
+        return;
+      }
+      final int[] indices = e.getChildIndices();
+      if(deleted < 0 || indices == null || indices.length == 0) {
+        fireTableDataChanged();
+        return;
+      }
+
+      /* the indices are the indices before the removal, in ascending order */
+      final TreePath parentPath = e.getTreePath();
+      final int firstRow = getChildRow(parentPath, indices[0]);
+      final int endRow = getChildRow(parentPath, indices[indices.length-1]-indices.length+1);
+      rowCount = tree.getRowCount();
+      fireTableRowsDeleted(firstRow, endRow+deleted-1);
+      if(endRow > firstRow)
+        fireTableRowsInserted(firstRow, endRow-1);
+      fireParentUpdated(parentPath);
+    }
+
+    /**
+     * A collapsed node keeps its row, so only the row is updated. That keeps the selection,
+     * e.g. when the children of a node that was never expanded are replaced.
+     */
+    public void treeStructureChanged(TreeModelEvent e) {
+      final TreePath path = e.getTreePath();
+      if(path != null && path.getParentPath() != null && !tree.isExpanded(path)
+          && tree.getRowCount() == rowCount)
+        fireParentUpdated(path);
+      else fireTableDataChanged();
+    }
+
+    /** Another model or a hidden root changes all rows. */
+    public void propertyChange(PropertyChangeEvent evt) {
+      if(JTree.TREE_MODEL_PROPERTY.equals(evt.getPropertyName()) ||
+          JTree.ROOT_VISIBLE_PROPERTY.equals(evt.getPropertyName()))
+        fireTableDataChanged();
+    }
+  }
 }
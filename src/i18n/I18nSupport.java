@@ -1,27 +1,144 @@
 package i18n;
 
 import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * User: Timm Herrmann
  * Date: 20.11.12
  * Time: 20:35
+ * <p/>
+ * The values are read from the bundles of the default locale. The bundles of a locale are
+ * copied into a table of strings once, together with the parsed message formats and the
+ * value arrays of {@link #getValues(String, String[])}. Changing the locale replaces the
+ * whole table at once, so a lookup sees either the old or the new language.
  */
 public class I18nSupport {
   private static final String I18N_POINT = "i18n."; //NON-NLS
 
+  private static volatile Table table = new Table(Locale.getDefault());
+
   public static String getValue(String bundleName, String key, Object... params) {
+    final Bundle bundle = getTable().getBundle(bundleName);
+    final String value = bundle.values.get(key);
     try {
-      final String value = getBundle(bundleName).getString(key);
-      if(params.length > 0) return MessageFormat.format(value,  params);
+      if(value == null)
+        return "!" +bundleName+"/"+key+"!";
+      if(params.length > 0) return bundle.format(key, value, params);
       return value;
-    } catch (Exception ex) {
+    } catch (IllegalArgumentException ex) {
       return "!" +bundleName+"/"+key+"!";
     }
   }
 
-  private static ResourceBundle getBundle(String bundleName) {
-    return ResourceBundle.getBundle(I18N_POINT+bundleName);
+  /**
+   * Returns the values of keys of a bundle. The array is created once per locale and must not
+   * be changed, so e.g. the descriptions of an enum can be read by the ordinal.
+   * @param keys The keys, the same array has to be passed for every lookup.
+   */
+  public static String[] getValues(String bundleName, String[] keys) {
+    final Bundle bundle = getTable().getBundle(bundleName);
+    String[] values = bundle.arrays.get(keys);
+    if(values == null) {
+      values = new String[keys.length];
+      for (int index = 0; index < keys.length; index++) {
+        values[index] = bundle.values.get(keys[index]);
+        if(values[index] == null)
+          values[index] = "!" +bundleName+"/"+keys[index]+"!";
+      }
+      final String[] known = bundle.arrays.putIfAbsent(keys, values);
+      if(known != null)
+        values = known;
+    }
+    return values;
+  }
+
+  /**
+   * Reads the values of a locale from now on. Should be called after the default locale was
+   * changed, so the values of the new locale are read before they are needed.
+   */
+  public static void setLocale(Locale locale) {
+    if(!table.locale.equals(locale)) {
+      final Table newTable = new Table(locale);
+      for (String bundleName : new String[]{BundleStrings.COMPONENTS, BundleStrings.MESSAGES,
+          BundleStrings.MISC, BundleStrings.TITLES})
+        newTable.getBundle(bundleName);
+      table = newTable;
+    }
+  }
+
+  /** Returns the table of the default locale. */
+  private static Table getTable() {
+    final Table current = table;
+    if(current.locale.equals(Locale.getDefault()))
+      return current;
+    setLocale(Locale.getDefault());
+    return table;
+  }
+
+  /* Inner classes */
+
+  /** The bundles of a locale, they are loaded when they are needed for the first time. */
+  private static class Table {
+    private final Locale locale;
+    private final ConcurrentMap<String, Bundle> bundles;
+
+    private Table(Locale locale) {
+      this.locale = locale;
+      bundles = new ConcurrentHashMap<String, Bundle>();
+    }
+
+    private Bundle getBundle(String bundleName) {
+      Bundle bundle = bundles.get(bundleName);
+      if(bundle == null) {
+        bundle = new Bundle(bundleName, locale);
+        final Bundle known = bundles.putIfAbsent(bundleName, bundle);
+        if(known != null)
+          bundle = known;
+      }
+      return bundle;
+    }
+  }
+
+  private static class Bundle {
+    private final Locale locale;
+    /* the values are not changed after the construction */
+    private final Map<String, String> values;
+    private final ConcurrentMap<String, MessageFormat> formats;
+    private final ConcurrentMap<String[], String[]> arrays;
+
+    private Bundle(String bundleName, Locale locale) {
+      this.locale = locale;
+      values = new HashMap<String, String>();
+      formats = new ConcurrentHashMap<String, MessageFormat>();
+      arrays = new ConcurrentHashMap<String[], String[]>();
+      try {
+        final ResourceBundle bundle = ResourceBundle.getBundle(I18N_POINT+bundleName, locale);
+        for (String key : bundle.keySet())
+          values.put(key, bundle.getString(key));
+      } catch (MissingResourceException ignored) {
+        /* every value of the bundle will be shown as missing */
+      }
+    }
+
+    private String format(String key, String pattern, Object[] params) {
+      MessageFormat format = formats.get(key);
+      if(format == null) {
+        format = new MessageFormat(pattern, locale);
+        final MessageFormat known = formats.putIfAbsent(key, format);
+        if(known != null)
+          format = known;
+      }
+      /* a message format must not be used by several threads at the same time */
+      synchronized (format) {
+        return format.format(params);
+      }
+    }
   }
 }
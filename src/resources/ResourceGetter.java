@@ -4,6 +4,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -13,6 +15,16 @@ import java.util.logging.Logger;
  */
 public class ResourceGetter {
   private static final Logger LOGGER = Logger.getLogger(ResourceGetter.class.getName());
+  /** Number of scaled images that are kept, the least recently used are removed first */
+  private static final int MAX_SCALED_IMAGES = 64;
+
+  private static final Map<ScaledImageKey, ImageIcon> SCALED_IMAGES =
+      new LinkedHashMap<ScaledImageKey, ImageIcon>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<ScaledImageKey, ImageIcon> eldest) {
+          return size() > MAX_SCALED_IMAGES;
+        }
+      };
+  private static volatile double screenScale;
 
   public static ImageIcon getImage(String imageName) {
     ImageIcon image = null;
@@ -39,6 +51,14 @@ public class ResourceGetter {
     return image;
   }
 
+  /**
+   * Returns an image that is scaled to a size. Scaled images are cached by their source and
+   * size, so an image is only scaled once as long as it is used often enough. On screens with
+   * a scale factor, e.g. HiDPI screens, the image is scaled to the size in device pixels, so
+   * it stays sharp.
+   * @param width Width of the scaled image or null to keep the aspect ratio.
+   * @param height Height of the scaled image or null to keep the aspect ratio.
+   */
   public static ImageIcon getScaledImage(ImageIcon srcImg, Integer width, Integer height){
     if(srcImg == null) return null;
     if(width == null && height == null) return srcImg;
@@ -48,12 +68,106 @@ public class ResourceGetter {
     else if(height == null)
       height = (int) (width*(float)srcImg.getIconHeight()/srcImg.getIconWidth());
 
-    BufferedImage resizeImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    final ScaledImageKey key = new ScaledImageKey(srcImg, width, height, getScreenScale());
+    synchronized (SCALED_IMAGES) {
+      final ImageIcon cached = SCALED_IMAGES.get(key);
+      if(cached != null)
+        return cached;
+    }
+
+    final ImageIcon scaled = scaleImage(srcImg, width, height, key.scale);
+    synchronized (SCALED_IMAGES) {
+      SCALED_IMAGES.put(key, scaled);
+    }
+    return scaled;
+  }
+
+  private static ImageIcon scaleImage(ImageIcon srcImg, int width, int height, double scale) {
+    final int deviceWidth = Math.max(1, (int) Math.round(width * scale));
+    final int deviceHeight = Math.max(1, (int) Math.round(height * scale));
+    BufferedImage resizeImage = new BufferedImage(deviceWidth, deviceHeight,
+        BufferedImage.TYPE_INT_ARGB);
     Graphics2D g2 = resizeImage.createGraphics();
     g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-    g2.drawImage(srcImg.getImage(), 0, 0, width, height, null);
+    g2.drawImage(srcImg.getImage(), 0, 0, deviceWidth, deviceHeight, null);
     g2.dispose();
 
-    return new ImageIcon(resizeImage);
+    if(deviceWidth == width && deviceHeight == height)
+      return new ImageIcon(resizeImage);
+    else return new ScaledIcon(resizeImage, width, height);
+  }
+
+  /** Returns the factor of device pixels per user space pixel of the default screen. */
+  private static double getScreenScale() {
+    double scale = screenScale;
+    if(scale == 0.0) {
+      scale = 1.0;
+      if(!GraphicsEnvironment.isHeadless()) {
+        scale = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDefaultConfiguration().getDefaultTransform().getScaleX();
+      }
+      screenScale = scale;
+    }
+    return scale;
+  }
+
+  /* Inner classes */
+
+  private static class ScaledImageKey {
+    private final ImageIcon source;
+    private final int width;
+    private final int height;
+    private final double scale;
+
+    private ScaledImageKey(ImageIcon source, int width, int height, double scale) {
+      this.source = source;
+      this.width = width;
+      this.height = height;
+      this.scale = scale;
+    }
+
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ScaledImageKey)) return false;
+
+      final ScaledImageKey key = (ScaledImageKey) o;
+      return source == key.source && width == key.width && height == key.height
+          && scale == key.scale;
+    }
+
+    public int hashCode() {
+      int result = System.identityHashCode(source);
+      result = 31 * result + width;
+      result = 31 * result + height;
+      return result;
+    }
+  }
+
+  /**
+   * Paints an image with more pixels than its size, so that a scaled graphics, e.g. of a
+   * HiDPI screen, paints every pixel of the image.
+   */
+  @SuppressWarnings("serial")
+  private static class ScaledIcon extends ImageIcon {
+    private final int width;
+    private final int height;
+
+    private ScaledIcon(Image image, int width, int height) {
+      super(image);
+      this.width = width;
+      this.height = height;
+    }
+
+    public int getIconWidth() {
+      return width;
+    }
+
+    public int getIconHeight() {
+      return height;
+    }
+
+    public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+      g.drawImage(getImage(), x, y, width, height, c);
+    }
   }
-}
\ No newline at end of file
+}